@@ -0,0 +1,38 @@
+package ai;
+
+import model.GameState;
+import model.PieceGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scoring one standard board with the default heuristic, and a whole sequential one-piece search on it
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeuristicBench {
+    private final WeightedHeuristic heuristic = new WeightedHeuristic();
+    private final BestMoveSearch search = new BestMoveSearch(heuristic, false, null);
+    private GameState state;
+
+    @Setup(Level.Trial)
+    public void create() {
+        state = new GameState(PieceGenerator.bag(3));
+        for (int i = 0; i < 12; i++) search.playOnce(state);
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return heuristic.evaluate(state.getPlayfield(), 1);
+    }
+
+    @Benchmark
+    public SearchResult find() {
+        return search.find(state);
+    }
+}
@@ -0,0 +1,36 @@
+package model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Locking a vertical I into a prepared well and clearing 0 to 4 lines, on a shallow and a tall stack
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBench {
+    @Param({"0", "1", "2", "3", "4"})
+    int clears;
+
+    @Param({"4", "16"})
+    int height;
+
+    private final Board board = new Board(GameState.ROWS, GameState.COLUMNS);
+    private final BaseTetromino i = Tetrominoes.get(0);
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        Fixtures.stack(board, clears, height);
+    }
+
+    @Benchmark
+    public int lockAndClear() {
+        board.place(i, 1, GameState.ROWS - 4, 0);
+        return board.clearFullRows();
+    }
+}
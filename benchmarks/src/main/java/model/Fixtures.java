@@ -0,0 +1,30 @@
+package model;
+
+/**
+ * Prepared boards shared by the benchmarks
+ */
+final class Fixtures {
+    private Fixtures() {}
+
+    /**
+     * Fills the bottom of a board so that a vertical I dropped into column 0 clears exactly
+     * the requested number of lines, then stacks ragged rows on top up to the given height.
+     * @param board
+     * @param clears 0 to 4
+     * @param height total stack height in rows, at least 4
+     */
+    static void stack(Board board, int clears, int height) {
+        board.clear();
+        int rows = board.getRows();
+        int full = (1 << board.getColumns()) - 1;
+        for (int i = 0; i < 4; i++) {
+            int mask = full & ~1;
+            if (i >= clears) mask &= ~(1 << 5);
+            board.setRow(rows - 1 - i, mask, i % Tetrominoes.count());
+        }
+        for (int i = 4; i < height; i++) {
+            int hole = 1 + (i * 7) % (board.getColumns() - 1);
+            board.setRow(rows - 1 - i, full & ~1 & ~(1 << hole), i % Tetrominoes.count());
+        }
+    }
+}
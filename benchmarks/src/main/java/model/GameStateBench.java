@@ -0,0 +1,69 @@
+package model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of the rules engine: collision checks through moves, hard drop and spawning
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameStateBench {
+    @Param({"4", "16"})
+    int height;
+
+    private GameState state;
+    private Piece spare;
+    private boolean left;
+
+    @Setup(Level.Trial)
+    public void create() {
+        state = new GameState();
+        Fixtures.stack(state.getPlayfield(), 0, height);
+        spare = state.randomPiece(null);
+    }
+
+    /**
+     * A fresh game on the stack fixture for every hard drop
+     */
+    @State(Scope.Thread)
+    public static class Drop {
+        @Param({"4", "16"})
+        int height;
+
+        final GameState state = new GameState();
+
+        @Setup(Level.Invocation)
+        public void prepare() {
+            state.reset();
+            Fixtures.stack(state.getPlayfield(), 0, height);
+        }
+    }
+
+    /**
+     * Alternating moves keep the piece in place while running one collision check per call
+     */
+    @Benchmark
+    public int tryMove() {
+        if (left) state.moveLeft();
+        else state.moveRight();
+        left = !left;
+        return state.getCurrent().col;
+    }
+
+    @Benchmark
+    public int hardDrop(Drop drop) {
+        drop.state.hardDrop();
+        return drop.state.getScore();
+    }
+
+    @Benchmark
+    public Piece randomPiece() {
+        return state.randomPiece(spare);
+    }
+}
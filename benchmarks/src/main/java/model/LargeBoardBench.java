@@ -0,0 +1,46 @@
+package model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clearing four lines at the bottom of a half-full board, from the standard well up to a
+ * 200-column, 1000-row one. The cost should follow the rows cleared, not the board size. A hashed
+ * board also re-keys every row above the cleared ones, since they all move down.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LargeBoardBench {
+    @Param({"10x20", "10x1000", "200x1000"})
+    String size;
+
+    @Param({"false", "true"})
+    boolean hashed;
+
+    private Board board;
+    private final BaseTetromino i = Tetrominoes.get(0);
+
+    @Setup(Level.Trial)
+    public void create() {
+        String[] wh = size.split("x");
+        board = new Board(Integer.parseInt(wh[1]), Integer.parseInt(wh[0]));
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        board.clear();
+        board.addGarbageRows(board.getRows() / 2, 0, Board.GARBAGE);
+        if (hashed) board.hash();
+    }
+
+    @Benchmark
+    public int lockAndClear() {
+        board.place(i, 1, board.getRows() - 4, 0);
+        return board.clearFullRows();
+    }
+}
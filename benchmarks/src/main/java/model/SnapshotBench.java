@@ -0,0 +1,55 @@
+package model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Branching a position the way search and rewind do: play a hard drop from a saved position and
+ * go back, through a snapshot and through full serialisation for comparison
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotBench {
+    @Param({"4", "16"})
+    int height;
+
+    private GameState state;
+    private Snapshot snapshot;
+    private ByteBuffer serialized;
+
+    @Setup(Level.Trial)
+    public void create() {
+        state = new GameState(PieceGenerator.bag(1));
+        Fixtures.stack(state.getPlayfield(), 0, height);
+        snapshot = state.snapshot();
+        serialized = ByteBuffer.allocate(state.maxSerializedBytes());
+        state.writeTo(serialized);
+        serialized.flip();
+    }
+
+    @Benchmark
+    public int dropAndRestore() {
+        state.hardDrop();
+        state.restore(snapshot);
+        return state.getScore();
+    }
+
+    @Benchmark
+    public int dropAndReadFrom() {
+        state.hardDrop();
+        state.readFrom(serialized.rewind());
+        return state.getScore();
+    }
+
+    @Benchmark
+    public Snapshot save() {
+        state.saveTo(snapshot);
+        return snapshot;
+    }
+}
@@ -0,0 +1,50 @@
+package view;
+
+import model.GameState;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full repaint of the game panel into an offscreen image
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class TetrisPanelBench {
+    @Param({"0", "16"})
+    int height;
+
+    private TetrisPanel panel;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @Setup(Level.Trial)
+    public void create() {
+        GameState state = new GameState();
+        int full = (1 << GameState.COLUMNS) - 1;
+        for (int i = 0; i < height; i++)
+            state.getPlayfield().setRow(GameState.ROWS - 1 - i, full & ~(1 << (i % GameState.COLUMNS)), i % 7);
+        panel = new TetrisPanel(state, "Bench");
+        Dimension size = panel.getPreferredSize();
+        panel.setSize(size);
+        image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+    }
+
+    @TearDown(Level.Trial)
+    public void dispose() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paintComponent() {
+        panel.paintComponent(g);
+        return image;
+    }
+}
@@ -0,0 +1,217 @@
+package ai;
+
+import model.BaseTetromino;
+import model.Board;
+import model.GameState;
+import model.Piece;
+import model.SplitMix64;
+import model.Tetrominoes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Picks the best placement of the current piece. Every root placement is scored in its own
+ * fork/join task on a private copy of the board, optionally looking one piece ahead through the
+ * preview piece. The live game is only read once, on the calling thread.
+ *
+ * With a transposition table, leaf scores and one-piece-lookahead scores are cached by board
+ * hash, so boards reached through different placement orders, or searched again on a later
+ * call, are scored once.
+ */
+public class BestMoveSearch {
+    private static final long LINES_SALT = 0x2545F4914F6CDD1DL;
+    private static final long NEXT_SALT = 0x9E3779B97F4A7C15L;
+
+    private final Heuristic heuristic;
+    private final boolean lookahead;
+    private final ForkJoinPool pool;
+    private final TranspositionTable table;
+
+    public BestMoveSearch(Heuristic heuristic, boolean lookahead) {
+        this(heuristic, lookahead, ForkJoinPool.commonPool(), null);
+    }
+
+    public BestMoveSearch(Heuristic heuristic, boolean lookahead, ForkJoinPool pool) {
+        this(heuristic, lookahead, pool, null);
+    }
+
+    /**
+     * @param heuristic
+     * @param lookahead
+     * @param pool pool to search in, or null to search on the calling thread, for callers that
+     *             already run many games in parallel
+     * @param table cache of scores for this heuristic, may be shared with other searches, or null
+     */
+    public BestMoveSearch(Heuristic heuristic, boolean lookahead, ForkJoinPool pool, TranspositionTable table) {
+        this.heuristic = heuristic;
+        this.lookahead = lookahead;
+        this.pool = pool;
+        this.table = table;
+    }
+
+    /**
+     * Score cache, null if the search runs without one
+     * @return
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Best placement the current piece can still reach from where it is now
+     * @param state
+     * @return null if the game is over or the piece has nowhere to go
+     */
+    public SearchResult find(GameState state) {
+        if (state.isGameOver()) return null;
+        Board board = state.getPlayfield().copyMasks();
+        // hash the root once, every scratch copy then keeps it up to date
+        if (lookahead || table != null) board.hash();
+        Piece cur = state.getCurrent();
+        BaseTetromino next = lookahead ? state.getNext().type : null;
+        PlacementGenerator gen = new PlacementGenerator(board.getRows(), board.getColumns());
+        List<Placement> roots = gen.generate(board, cur.type, cur.rot, cur.row, cur.col);
+        if (roots.isEmpty()) return null;
+        if (pool == null) return searchHere(board, cur.type, next, roots, gen);
+        return pool.invoke(new Root(board, cur.type, next, roots));
+    }
+
+    /**
+     * Scores every root placement one after another, reusing one scratch board
+     * @param board
+     * @param t
+     * @param next
+     * @param roots
+     * @param gen
+     * @return
+     */
+    private SearchResult searchHere(Board board, BaseTetromino t, BaseTetromino next, List<Placement> roots,
+                                    PlacementGenerator gen) {
+        Board scratch = new Board(board.getRows(), board.getColumns(), false);
+        int[] heights = new int[board.getColumns()];
+        Placement best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (Placement p : roots) {
+            double s = score(board, t, p, next, scratch, gen, heights);
+            if (best == null || s > bestScore) {
+                best = p;
+                bestScore = s;
+            }
+        }
+        return new SearchResult(best, bestScore);
+    }
+
+    /**
+     * Finds the best placement and locks the current piece there
+     * @param state
+     * @return false if there was no placement
+     */
+    public boolean playOnce(GameState state) {
+        SearchResult best = find(state);
+        if (best == null) return false;
+        Placement p = best.placement();
+        return state.lockAt(p.rot(), p.row(), p.col());
+    }
+
+    /**
+     * Scores a placement sequentially on a scratch board
+     * @param board board before the placement, left untouched
+     * @param t
+     * @param p
+     * @param next preview piece to look ahead with, or null
+     * @param scratch
+     * @param gen
+     * @param heights heuristic scratch space of this thread
+     * @return
+     */
+    private double score(Board board, BaseTetromino t, Placement p, BaseTetromino next, Board scratch,
+                         PlacementGenerator gen, int[] heights) {
+        scratch.copyMasksFrom(board);
+        scratch.place(t, p.rot(), p.row(), p.col());
+        int lines = scratch.clearFullRows();
+        if (next == null) return evaluate(scratch, lines, heights);
+
+        long key = scratch.hash() ^ SplitMix64.mix(NEXT_SALT + next.getIndex() * 1024L + lines);
+        if (table != null) {
+            double cached = table.get(key, 1);
+            if (!Double.isNaN(cached)) return cached;
+        }
+        List<Placement> follow = gen.generate(scratch, next, Tetrominoes.spawnColumn(next.getIndex(), scratch.getColumns()));
+        double best = Double.NEGATIVE_INFINITY;
+        if (!follow.isEmpty()) {
+            Board leaf = scratch.copyMasks();
+            for (Placement q : follow) {
+                leaf.copyMasksFrom(scratch);
+                leaf.place(next, q.rot(), q.row(), q.col());
+                int more = leaf.clearFullRows();
+                best = Math.max(best, evaluate(leaf, lines + more, heights));
+            }
+        }
+        if (table != null) table.put(key, 1, best);
+        return best;
+    }
+
+    /**
+     * Heuristic score of a board, through the table when there is one
+     * @param board
+     * @param lines
+     * @param heights
+     * @return
+     */
+    private double evaluate(Board board, int lines, int[] heights) {
+        if (table == null) return heuristic.evaluate(board, lines, heights);
+        long key = board.hash() ^ SplitMix64.mix(LINES_SALT + lines);
+        double cached = table.get(key, 0);
+        if (!Double.isNaN(cached)) return cached;
+        double score = heuristic.evaluate(board, lines, heights);
+        table.put(key, 0, score);
+        return score;
+    }
+
+    private class Root extends RecursiveTask<SearchResult> {
+        private final Board board;
+        private final BaseTetromino type;
+        private final BaseTetromino next;
+        private final List<Placement> placements;
+
+        Root(Board board, BaseTetromino type, BaseTetromino next, List<Placement> placements) {
+            this.board = board;
+            this.type = type;
+            this.next = next;
+            this.placements = placements;
+        }
+
+        @Override
+        protected SearchResult compute() {
+            List<Branch> branches = new ArrayList<>(placements.size());
+            for (Placement p : placements) branches.add(new Branch(this, p));
+            invokeAll(branches);
+            SearchResult best = null;
+            for (Branch b : branches) {
+                double s = b.getRawResult();
+                if (best == null || s > best.score()) best = new SearchResult(b.placement, s);
+            }
+            return best;
+        }
+    }
+
+    private class Branch extends RecursiveTask<Double> {
+        private final Root root;
+        private final Placement placement;
+
+        Branch(Root root, Placement placement) {
+            this.root = root;
+            this.placement = placement;
+        }
+
+        @Override
+        protected Double compute() {
+            Board scratch = new Board(root.board.getRows(), root.board.getColumns(), false);
+            PlacementGenerator gen = new PlacementGenerator(root.board.getRows(), root.board.getColumns());
+            return score(root.board, root.type, placement, root.next, scratch, gen, new int[root.board.getColumns()]);
+        }
+    }
+}
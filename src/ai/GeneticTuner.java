@@ -0,0 +1,360 @@
+package ai;
+
+import model.GameState;
+import model.PieceGenerator;
+import model.SplitMix64;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evolves WeightedHeuristic weights by playing full headless games.
+ *
+ * Every candidate plays the same fixed set of seeded 7-bag games, so fitness is deterministic and
+ * candidates are compared on equal terms. The games have no 40-line win, they run until the stack
+ * tops out or a piece limit is reached, so a candidate that survives longer clears more lines and
+ * good heuristics don't all tie at the win. Each game is its own fork/join task and searches on its
+ * own thread, so idle workers steal whole games and long games don't hold up a generation.
+ * Offspring are fitness-weighted blends of two tournament winners, mutated and normalised to unit
+ * length; the best candidates carry over unchanged and keep their fitness.
+ *
+ * The population and the random state are checkpointed after every generation, and a run started
+ * on an existing checkpoint carries on from it.
+ */
+public class GeneticTuner {
+    /** Lines cleared or points scored before the stack tops out or the piece limit stops the game */
+    public enum Fitness { LINES, SCORE }
+
+    private static final int MAGIC = 0x54544754; // "TTGT"
+    private static final byte VERSION = 2;
+    private static final int TOURNAMENT = 4;
+    private static final double MUTATION_RATE = 0.1;
+    private static final double MUTATION_STEP = 0.2;
+
+    private final int population;
+    private final int games;
+    private final int pieceLimit;
+    private final int elite;
+    private final Fitness fitness;
+    private final long seed;
+    private final ForkJoinPool pool;
+    private final Path checkpoint;
+
+    private final SplitMix64 rng;
+    private double[][] weights;
+    private double[] scores;
+    private int generation = 0;
+    private double bestFitness = Double.NaN;
+    private double meanFitness = Double.NaN;
+
+    private final LongAdder gamesPlayed = new LongAdder();
+    private final LongAdder piecesPlayed = new LongAdder();
+
+    /**
+     * @param population candidates per generation
+     * @param games seeded games each candidate plays
+     * @param pieceLimit pieces after which a game that is still going stops
+     * @param fitness
+     * @param seed seeds the games and the evolution
+     * @param pool pool the games run in
+     * @param checkpoint file the population is saved to after each generation, or null
+     */
+    public GeneticTuner(int population, int games, int pieceLimit, Fitness fitness, long seed, ForkJoinPool pool,
+                        Path checkpoint) {
+        this.population = population;
+        this.games = games;
+        this.pieceLimit = pieceLimit;
+        this.elite = Math.max(1, population / 10);
+        this.fitness = fitness;
+        this.seed = seed;
+        this.pool = pool;
+        this.checkpoint = checkpoint;
+        this.rng = new SplitMix64(seed);
+        weights = new double[population][];
+        scores = new double[population];
+        for (int i = 0; i < population; i++) {
+            double[] w = new double[WeightedHeuristic.FEATURES];
+            for (int f = 0; f < w.length; f++) w[f] = nextDouble() * 2 - 1;
+            weights[i] = normalise(w);
+            scores[i] = Double.NaN;
+        }
+    }
+
+    /**
+     * Replaces the population with the one in a checkpoint file written by the same settings
+     * @return false if there is no usable checkpoint
+     */
+    public boolean resume() {
+        if (checkpoint == null || !Files.exists(checkpoint)) return false;
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            if (buf.getInt() != MAGIC || buf.get() != VERSION) {
+                System.err.println("Not a tuner checkpoint: " + checkpoint);
+                return false;
+            }
+            long savedSeed = buf.getLong();
+            int savedGames = buf.getInt();
+            int savedLimit = buf.getInt();
+            Fitness savedFitness = Fitness.values()[buf.get()];
+            int savedPopulation = buf.getInt();
+            if (savedSeed != seed || savedGames != games || savedLimit != pieceLimit
+                    || savedFitness != fitness || savedPopulation != population) {
+                System.err.println("Checkpoint " + checkpoint + " was made with different settings, starting over");
+                return false;
+            }
+            int savedGeneration = buf.getInt();
+            long savedState = buf.getLong();
+            double[][] savedWeights = new double[population][WeightedHeuristic.FEATURES];
+            double[] savedScores = new double[population];
+            for (int i = 0; i < population; i++) {
+                for (int f = 0; f < WeightedHeuristic.FEATURES; f++) savedWeights[i][f] = buf.getDouble();
+                savedScores[i] = buf.getDouble();
+            }
+            if (buf.hasRemaining()) {
+                System.err.println("Checkpoint " + checkpoint + " has trailing bytes, starting over");
+                return false;
+            }
+            // only touch the population once the whole record has been read
+            generation = savedGeneration;
+            rng.setState(savedState);
+            weights = savedWeights;
+            scores = savedScores;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Couldn't read checkpoint " + checkpoint);
+            return false;
+        }
+    }
+
+    /**
+     * Scores the candidates that haven't been scored yet, then breeds the next generation
+     * @return best candidate of the generation just scored
+     */
+    public WeightedHeuristic step() {
+        evaluate();
+        Integer[] order = rank();
+        WeightedHeuristic best = new WeightedHeuristic(weights[order[0]]);
+        bestFitness = scores[order[0]];
+        meanFitness = Arrays.stream(scores).average().orElse(0);
+
+        double[][] nextWeights = new double[population][];
+        double[] nextScores = new double[population];
+        for (int i = 0; i < elite; i++) {
+            nextWeights[i] = weights[order[i]];
+            nextScores[i] = scores[order[i]];
+        }
+        for (int i = elite; i < population; i++) {
+            int a = tournament(), b = tournament();
+            nextWeights[i] = normalise(mutate(crossover(a, b)));
+            nextScores[i] = Double.NaN;
+        }
+        weights = nextWeights;
+        scores = nextScores;
+        generation++;
+        save();
+        return best;
+    }
+
+    /**
+     * Plays every unscored candidate's games in the pool
+     */
+    private void evaluate() {
+        List<Game> tasks = new ArrayList<>();
+        for (int i = 0; i < population; i++) {
+            if (!Double.isNaN(scores[i])) continue;
+            Heuristic h = new WeightedHeuristic(weights[i]);
+            for (int g = 0; g < games; g++) tasks.add(new Game(i, h, gameSeed(g)));
+        }
+        if (tasks.isEmpty()) return;
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        double[] total = new double[population];
+        for (Game t : tasks) total[t.candidate] += t.result;
+        for (int i = 0; i < population; i++)
+            if (Double.isNaN(scores[i])) scores[i] = total[i] / games;
+    }
+
+    private long gameSeed(int g) {
+        return SplitMix64.mix(seed + g);
+    }
+
+    private Integer[] rank() {
+        Integer[] order = new Integer[population];
+        for (int i = 0; i < population; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble((Integer i) -> scores[i]).reversed());
+        return order;
+    }
+
+    private int tournament() {
+        int best = rng.nextInt(population);
+        for (int k = 1; k < TOURNAMENT; k++) {
+            int c = rng.nextInt(population);
+            if (scores[c] > scores[best]) best = c;
+        }
+        return best;
+    }
+
+    /**
+     * Blend of two parents, each weighted by its fitness
+     */
+    private double[] crossover(int a, int b) {
+        double fa = Math.max(scores[a], 0), fb = Math.max(scores[b], 0);
+        double share = fa + fb == 0 ? 0.5 : fa / (fa + fb);
+        double[] child = new double[WeightedHeuristic.FEATURES];
+        for (int f = 0; f < child.length; f++) child[f] = weights[a][f] * share + weights[b][f] * (1 - share);
+        return child;
+    }
+
+    private double[] mutate(double[] w) {
+        if (nextDouble() < MUTATION_RATE) w[rng.nextInt(w.length)] += (nextDouble() * 2 - 1) * MUTATION_STEP;
+        return w;
+    }
+
+    private static double[] normalise(double[] w) {
+        double len = 0;
+        for (double x : w) len += x * x;
+        len = Math.sqrt(len);
+        if (len == 0) return w;
+        for (int f = 0; f < w.length; f++) w[f] /= len;
+        return w;
+    }
+
+    private double nextDouble() {
+        return (rng.nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Writes the population next to the checkpoint file and moves it into place, so a crash
+     * mid-write leaves the previous checkpoint intact
+     */
+    private void save() {
+        if (checkpoint == null) return;
+        ByteBuffer buf = ByteBuffer.allocate(4 + 1 + 8 + 4 + 4 + 1 + 4 + 4 + 8
+                + population * (WeightedHeuristic.FEATURES + 1) * 8);
+        buf.putInt(MAGIC).put(VERSION);
+        buf.putLong(seed).putInt(games).putInt(pieceLimit).put((byte) fitness.ordinal()).putInt(population);
+        buf.putInt(generation).putLong(rng.getState());
+        for (int i = 0; i < population; i++) {
+            for (double w : weights[i]) buf.putDouble(w);
+            buf.putDouble(scores[i]);
+        }
+        buf.flip();
+        Path tmp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try {
+            Path dir = checkpoint.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buf.hasRemaining()) out.write(buf);
+                out.force(true);
+            }
+            Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Couldn't save checkpoint " + checkpoint);
+        }
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Fitness of the best candidate of the last generation scored
+     * @return
+     */
+    public double getBestFitness() {
+        return bestFitness;
+    }
+
+    public double getMeanFitness() {
+        return meanFitness;
+    }
+
+    public long getGamesPlayed() {
+        return gamesPlayed.sum();
+    }
+
+    public long getPiecesPlayed() {
+        return piecesPlayed.sum();
+    }
+
+    /**
+     * One game of one candidate without the line goal, played on the worker thread that runs it
+     */
+    private final class Game extends RecursiveAction {
+        private final int candidate;
+        private final Heuristic heuristic;
+        private final long gameSeed;
+        private double result;
+
+        Game(int candidate, Heuristic heuristic, long gameSeed) {
+            this.candidate = candidate;
+            this.heuristic = heuristic;
+            this.gameSeed = gameSeed;
+        }
+
+        @Override
+        protected void compute() {
+            GameState state = new GameState(PieceGenerator.bag(gameSeed));
+            state.setWinLines(0);
+            BestMoveSearch search = new BestMoveSearch(heuristic, false, null);
+            long pieces = 0;
+            while (pieces < pieceLimit && !state.isGameOver() && search.playOnce(state)) pieces++;
+            result = fitness == Fitness.LINES ? state.getLinesCleared() : state.getScore();
+            gamesPlayed.increment();
+            piecesPlayed.add(pieces);
+        }
+    }
+
+    /**
+     * Tunes weights and prints each generation:
+     * GeneticTuner [checkpoint] [generations] [population] [games] [threads] [lines|score] [pieces]
+     * @param args
+     */
+    public static void main(String[] args) {
+        Path checkpoint = Path.of(args.length > 0 ? args[0] : "data/tuner.ckpt");
+        int generations = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int population = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        int games = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        Fitness fitness = args.length > 5 ? Fitness.valueOf(args[5].toUpperCase()) : Fitness.LINES;
+        int pieceLimit = args.length > 6 ? Integer.parseInt(args[6]) : 2000;
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        GeneticTuner tuner = new GeneticTuner(population, games, pieceLimit, fitness, 1, pool, checkpoint);
+        if (tuner.resume()) System.out.println("Resuming at generation " + tuner.getGeneration());
+        long start = System.nanoTime();
+        while (tuner.getGeneration() < generations) {
+            long genStart = System.nanoTime(), gamesBefore = tuner.getGamesPlayed();
+            long piecesBefore = tuner.getPiecesPlayed();
+            WeightedHeuristic best = tuner.step();
+            double secs = (System.nanoTime() - genStart) / 1e9;
+            long played = tuner.getGamesPlayed() - gamesBefore;
+            double survived = played == 0 ? 0 : (double) (tuner.getPiecesPlayed() - piecesBefore) / played;
+            System.out.printf("generation %d: best %.1f, mean %.1f, %.0f pieces/game, %d games in %.1fs (%.0f games/s), %s%n",
+                    tuner.getGeneration(), tuner.getBestFitness(), tuner.getMeanFitness(), survived, played, secs,
+                    played / secs, best);
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games, %d pieces in %.1fs on %d threads: %.0f games/s, %.0f pieces/s%n",
+                tuner.getGamesPlayed(), tuner.getPiecesPlayed(), secs, threads,
+                tuner.getGamesPlayed() / secs, tuner.getPiecesPlayed() / secs);
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,30 @@
+package ai;
+
+import model.Board;
+
+/**
+ * Scores a board after a placement, higher is better. Implementations are shared by search threads
+ * and must be stateless.
+ */
+@FunctionalInterface
+public interface Heuristic {
+
+    /**
+     * @param board board after full lines were removed
+     * @param lines lines cleared on the way to this board
+     * @return
+     */
+    double evaluate(Board board, int lines);
+
+    /**
+     * Same as evaluate(board, lines), with working space owned by the calling search thread so
+     * nothing is allocated per board. Heuristics that need none ignore it.
+     * @param board
+     * @param lines
+     * @param scratch at least board.getColumns() ints, overwritten
+     * @return
+     */
+    default double evaluate(Board board, int lines, int[] scratch) {
+        return evaluate(board, lines);
+    }
+}
@@ -0,0 +1,11 @@
+package ai;
+
+/**
+ * A final resting position of a piece.
+ * @param rot rotation index
+ * @param row top row of the piece
+ * @param col left column of the piece
+ * @param slide true if the piece has to be soft dropped and then shifted or rotated to get there
+ */
+public record Placement(int rot, int row, int col, boolean slide) {
+}
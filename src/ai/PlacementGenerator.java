@@ -0,0 +1,122 @@
+package ai;
+
+import model.BaseTetromino;
+import model.Board;
+import model.GameState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lists every final placement a piece can reach from its current position using the same moves
+ * as the game: shift, soft drop and clockwise rotation with kicks. Reuses its scratch arrays,
+ * so each search thread needs its own generator.
+ */
+public class PlacementGenerator {
+    private static final int ROTATIONS = 4;
+    /** Rows above the board a piece pushed up by garbage can start from, one per row of a tetromino */
+    private static final int ABOVE = 4;
+
+    private final int cols;
+    private final int span;
+    private final boolean[] visited;
+    private final int[] reported;
+    private final int[] queue;
+    private final int[] canonical = new int[ROTATIONS];
+
+    public PlacementGenerator(int rows, int cols) {
+        this.cols = cols;
+        this.span = rows + ABOVE;
+        this.visited = new boolean[ROTATIONS * span * cols];
+        this.reported = new int[visited.length];
+        this.queue = new int[visited.length];
+    }
+
+    /**
+     * Placements of a piece spawned at row 0 of the given column
+     * @param board
+     * @param t
+     * @param spawnCol
+     * @return empty if the piece cannot spawn
+     */
+    public List<Placement> generate(Board board, BaseTetromino t, int spawnCol) {
+        return generate(board, t, 0, 0, spawnCol);
+    }
+
+    /**
+     * Placements of a piece that has already moved, searched from where it is now. A placement is a
+     * slide unless the piece gets there by shifting and rotating on its current row and dropping.
+     * @param board
+     * @param t
+     * @param startRot
+     * @param startRow
+     * @param startCol
+     * @return empty if the piece doesn't fit where it is
+     */
+    public List<Placement> generate(Board board, BaseTetromino t, int startRot, int startRow, int startCol) {
+        List<Placement> out = new ArrayList<>();
+        if (board.collides(t, startRot, startRow, startCol)) return out;
+
+        Arrays.fill(visited, false);
+        Arrays.fill(reported, -1);
+        for (int rot = 0; rot < ROTATIONS; rot++) canonical[rot] = canonicalRotation(t, rot);
+        int head = 0, tail = 0;
+        queue[tail++] = index(startRot, startRow, startCol);
+        visited[queue[0]] = true;
+
+        while (head < tail) {
+            int s = queue[head++];
+            int col = s % cols, row = (s / cols) % span - ABOVE, rot = s / (cols * span);
+
+            tail = visit(board, t, rot, row, col - 1, tail);
+            tail = visit(board, t, rot, row, col + 1, tail);
+            tail = visit(board, t, rot, row + 1, col, tail);
+            int nr = (rot + 1) % ROTATIONS;
+            for (int kick : GameState.ROTATION_KICKS) {
+                if (!board.collides(t, nr, row, col + kick)) {
+                    tail = visit(board, t, nr, row, col + kick, tail);
+                    break;
+                }
+            }
+
+            if (board.collides(t, rot, row + 1, col)) {
+                int c = canonical[rot];
+                boolean fromTop = visited[index(rot, startRow, col)] && board.dropRow(t, rot, startRow, col) == row;
+                int f = index(c, row, col);
+                if (reported[f] < 0) {
+                    reported[f] = out.size();
+                    out.add(new Placement(c, row, col, !fromTop));
+                } else if (fromTop && out.get(reported[f]).slide()) {
+                    out.set(reported[f], new Placement(c, row, col, false));
+                }
+            }
+        }
+        return out;
+    }
+
+    private int visit(Board board, BaseTetromino t, int rot, int row, int col, int tail) {
+        if (board.collides(t, rot, row, col)) return tail;
+        int i = index(rot, row, col);
+        if (visited[i]) return tail;
+        visited[i] = true;
+        queue[tail] = i;
+        return tail + 1;
+    }
+
+    private int index(int rot, int row, int col) {
+        return (rot * span + row + ABOVE) * cols + col;
+    }
+
+    /**
+     * Symmetric shapes repeat a rotation, placements are reported under the first rotation with the same cells
+     * @param t
+     * @param rot
+     * @return
+     */
+    private static int canonicalRotation(BaseTetromino t, int rot) {
+        for (int r = 0; r < rot; r++)
+            if (Arrays.equals(t.getRowMasks(r), t.getRowMasks(rot))) return r;
+        return rot;
+    }
+}
@@ -0,0 +1,9 @@
+package ai;
+
+/**
+ * Best placement found for the current piece and the score of the line it leads to
+ * @param placement
+ * @param score
+ */
+public record SearchResult(Placement placement, double score) {
+}
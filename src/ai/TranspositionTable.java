@@ -0,0 +1,150 @@
+package ai;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size cache of position scores shared by search threads without locks.
+ *
+ * Each bucket holds two entries: the first keeps whichever entry took the most search depth
+ * to compute, the second takes everything else, so a flood of cheap leaf scores can't push out
+ * the expensive ones. An entry is two longs, the score bits and the key XOR the score bits;
+ * a reader that catches a half-written entry sees a key that doesn't match and treats it as
+ * a miss, so no locking is needed.
+ *
+ * Cached scores are only valid for the heuristic that produced them, use one table per heuristic.
+ */
+public class TranspositionTable {
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long DEPTH_BITS = 3;
+    private static final int LONGS_PER_BUCKET = 4;
+
+    private final long[] table;
+    private final int bucketMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param entries capacity, rounded up to a power of two
+     */
+    public TranspositionTable(int entries) {
+        int buckets = 1;
+        while (buckets * 2 < entries) buckets <<= 1;
+        table = new long[buckets * LONGS_PER_BUCKET];
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * Cached score of a position
+     * @param key position hash
+     * @param depth plies of search behind the score, 0 to 3
+     * @return the score, or NaN if it isn't cached
+     */
+    public double get(long key, int depth) {
+        long k = tag(key, depth);
+        int i = bucket(k);
+        for (int e = i; e < i + LONGS_PER_BUCKET; e += 2) {
+            long data = (long) SLOT.getOpaque(table, e + 1);
+            if (((long) SLOT.getOpaque(table, e) ^ data) == k) {
+                hits.increment();
+                return Double.longBitsToDouble(data);
+            }
+        }
+        misses.increment();
+        return Double.NaN;
+    }
+
+    /**
+     * Caches a score, replacing whatever the bucket's policy picks
+     * @param key position hash
+     * @param depth plies of search behind the score, 0 to 3
+     * @param score
+     */
+    public void put(long key, int depth, double score) {
+        long k = tag(key, depth);
+        long data = Double.doubleToRawLongBits(score);
+        int i = bucket(k);
+        long firstData = (long) SLOT.getOpaque(table, i + 1);
+        long firstKey = (long) SLOT.getOpaque(table, i) ^ firstData;
+        boolean firstEmpty = firstKey == 0 && firstData == 0;
+        int e;
+        if (firstEmpty || firstKey == k || depth >= (firstKey & DEPTH_BITS)) {
+            if (!firstEmpty && firstKey != k) {
+                // the deeper slot's old entry moves down to the always-replace slot
+                if (occupiedByOther(i + 2, firstKey)) evictions.increment();
+                write(i + 2, firstKey, firstData);
+            }
+            e = i;
+        } else {
+            e = i + 2;
+            if (occupiedByOther(e, k)) evictions.increment();
+        }
+        write(e, k, data);
+        stores.increment();
+    }
+
+    private boolean occupiedByOther(int e, long k) {
+        long data = (long) SLOT.getOpaque(table, e + 1);
+        long key = (long) SLOT.getOpaque(table, e) ^ data;
+        return (key != 0 || data != 0) && key != k;
+    }
+
+    private void write(int e, long k, long data) {
+        SLOT.setOpaque(table, e + 1, data);
+        SLOT.setOpaque(table, e, k ^ data);
+    }
+
+    private static long tag(long key, int depth) {
+        return (key & ~DEPTH_BITS) | (depth & DEPTH_BITS);
+    }
+
+    private int bucket(long k) {
+        return (int) ((k ^ (k >>> 32)) >>> 2 & bucketMask) * LONGS_PER_BUCKET;
+    }
+
+    public int capacity() {
+        return table.length / 2;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * Stores that pushed out a different position
+     * @return
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Share of lookups served from the table
+     * @return
+     */
+    public double hitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * One line of counters for logs
+     * @return
+     */
+    public String report() {
+        return String.format("transposition table: %d entries, hit rate %.1f%% (%d hits, %d misses), %d stores, %d evictions",
+                capacity(), hitRate() * 100, getHits(), getMisses(), getStores(), getEvictions());
+    }
+}
@@ -0,0 +1,95 @@
+package ai;
+
+import model.Board;
+
+import java.util.Arrays;
+
+/**
+ * Linear combination of aggregate height, holes, bumpiness, cleared lines and well depth
+ */
+public class WeightedHeuristic implements Heuristic {
+    /** Number of weights, in the order of weights() */
+    public static final int FEATURES = 5;
+
+    private final double height;
+    private final double holes;
+    private final double bumpiness;
+    private final double lines;
+    private final double wells;
+
+    /**
+     * Weights that play a solid game out of the box
+     */
+    public WeightedHeuristic() {
+        this(-0.51, -0.36, -0.18, 0.76);
+    }
+
+    public WeightedHeuristic(double height, double holes, double bumpiness, double lines) {
+        this(height, holes, bumpiness, lines, 0);
+    }
+
+    public WeightedHeuristic(double height, double holes, double bumpiness, double lines, double wells) {
+        this.height = height;
+        this.holes = holes;
+        this.bumpiness = bumpiness;
+        this.lines = lines;
+        this.wells = wells;
+    }
+
+    /**
+     * @param weights height, holes, bumpiness, lines and wells, as returned by weights()
+     */
+    public WeightedHeuristic(double[] weights) {
+        this(weights[0], weights[1], weights[2], weights[3], weights[4]);
+    }
+
+    /**
+     * Weights in constructor order: height, holes, bumpiness, lines, wells
+     * @return
+     */
+    public double[] weights() {
+        return new double[] {height, holes, bumpiness, lines, wells};
+    }
+
+    @Override
+    public double evaluate(Board board, int cleared) {
+        return evaluate(board, cleared, new int[board.getColumns()]);
+    }
+
+    @Override
+    public double evaluate(Board board, int cleared, int[] heights) {
+        int rows = board.getRows(), cols = board.getColumns(), top = board.topRow();
+        Arrays.fill(heights, 0, cols, 0);
+        int holeCount = 0;
+        // one column of words at a time, so the cells seen so far fit in a register
+        for (int w = 0, words = board.words(); w < words; w++) {
+            long seen = 0;
+            for (int r = top; r < rows; r++) {
+                long m = board.word(r, w);
+                holeCount += Long.bitCount(seen & ~m);
+                long fresh = m & ~seen;
+                while (fresh != 0) {
+                    heights[(w << 6) + Long.numberOfTrailingZeros(fresh)] = rows - r;
+                    fresh &= fresh - 1;
+                }
+                seen |= m;
+            }
+        }
+        int aggregate = 0, bumps = 0, wellDepth = 0;
+        for (int c = 0; c < cols; c++) {
+            aggregate += heights[c];
+            if (c > 0) bumps += Math.abs(heights[c] - heights[c - 1]);
+            // walls count as full height, so an empty edge column beside a stack is a well
+            int left = c > 0 ? heights[c - 1] : rows;
+            int right = c < cols - 1 ? heights[c + 1] : rows;
+            wellDepth += Math.max(0, Math.min(left, right) - heights[c]);
+        }
+        return height * aggregate + holes * holeCount + bumpiness * bumps + lines * cleared + wells * wellDepth;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("height %.4f, holes %.4f, bumpiness %.4f, lines %.4f, wells %.4f",
+                height, holes, bumpiness, lines, wells);
+    }
+}
@@ -0,0 +1,97 @@
+package controller;
+
+import metrics.Metrics;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dedicated game-loop thread. Simulation advances in fixed steps of TICK_NANOS taken from an
+ * accumulator of real elapsed time, so gravity keeps millisecond accuracy at every level no
+ * matter how long a frame took. Rendering happens once per display frame, independently of
+ * how many simulation steps ran.
+ */
+public class GameLoop implements Runnable {
+    public static final long TICK_NANOS = 1_000_000L;
+
+    /**
+     * A stall longer than this (debugger, sleep, window drag) is dropped instead of being caught up
+     */
+    private static final long MAX_CATCH_UP_NANOS = 250_000_000L;
+
+    private final Object lock;
+    private final Runnable tick;
+    private final Runnable frame;
+    private final long frameNanos;
+    private final Thread thread;
+    private volatile boolean running = false;
+
+    /**
+     * @param lock held while ticking and rendering
+     * @param tick one fixed simulation step
+     * @param frame renders one frame
+     * @param refreshRate display refresh rate in Hz, frames are paced to it
+     */
+    public GameLoop(Object lock, Runnable tick, Runnable frame, int refreshRate) {
+        this.lock = lock;
+        this.tick = tick;
+        this.frame = frame;
+        this.frameNanos = 1_000_000_000L / Math.max(1, refreshRate);
+        this.thread = new Thread(this, "game-loop");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Runs the pending ticks and a frame right away instead of at the next frame boundary, so
+     * input doesn't sit in the queue for up to a whole frame. Frame pacing is not disturbed.
+     */
+    public void wake() {
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long accumulator = 0;
+        long nextFrame = previous;
+        long lastFrame = previous;
+        while (running) {
+            long now = System.nanoTime();
+            accumulator += Math.min(now - previous, MAX_CATCH_UP_NANOS);
+            previous = now;
+
+            synchronized (lock) {
+                long allocated = Metrics.ENABLED ? Metrics.allocatedBytes() : 0;
+                int ticks = 0;
+                while (accumulator >= TICK_NANOS) {
+                    tick.run();
+                    accumulator -= TICK_NANOS;
+                    ticks++;
+                }
+                if (Metrics.ENABLED && ticks > 0 && allocated >= 0)
+                    Metrics.TICK_ALLOCATED_BYTES.record((Metrics.allocatedBytes() - allocated) / ticks);
+                frame.run();
+            }
+
+            long after = System.nanoTime();
+            if (Metrics.ENABLED) {
+                Metrics.FRAME_TIME.record(after - lastFrame);
+                lastFrame = after;
+            }
+            if (after >= nextFrame) {
+                if (Metrics.ENABLED) Metrics.DROPPED_FRAMES.addAndGet((after - nextFrame) / frameNanos);
+                nextFrame = after + frameNanos - (after - nextFrame) % frameNanos;
+            }
+            LockSupport.parkNanos(nextFrame - after);
+        }
+    }
+}
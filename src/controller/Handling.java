@@ -0,0 +1,26 @@
+package controller;
+
+/**
+ * How held keys behave
+ * @param dasMs delayed auto shift, how long left or right must be held before it starts repeating
+ * @param arrMs auto repeat rate, time between repeated shifts, 0 slides straight to the wall
+ * @param softDropFactor how many times faster than gravity the piece falls while down is held
+ */
+public record Handling(int dasMs, int arrMs, int softDropFactor) {
+
+    public Handling {
+        if (dasMs < 0 || arrMs < 0 || softDropFactor < 1)
+            throw new IllegalArgumentException("Invalid handling " + dasMs + "/" + arrMs + "/" + softDropFactor);
+    }
+
+    /**
+     * Defaults, overridden by -Dtetris.das, -Dtetris.arr and -Dtetris.sdf
+     * @return
+     */
+    public static Handling fromSystemProperties() {
+        return new Handling(
+                Integer.getInteger("tetris.das", 170),
+                Integer.getInteger("tetris.arr", 50),
+                Integer.getInteger("tetris.sdf", 20));
+    }
+}
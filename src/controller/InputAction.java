@@ -0,0 +1,40 @@
+package controller;
+
+import java.awt.event.KeyEvent;
+
+/**
+ * Game actions the keyboard can trigger, with their default key binding
+ */
+public enum InputAction {
+    LEFT(KeyEvent.VK_LEFT),
+    RIGHT(KeyEvent.VK_RIGHT),
+    SOFT_DROP(KeyEvent.VK_DOWN),
+    ROTATE(KeyEvent.VK_UP),
+    HARD_DROP(KeyEvent.VK_SPACE),
+    PAUSE(KeyEvent.VK_P),
+    RESET(KeyEvent.VK_R),
+    UNDO(KeyEvent.VK_Z);
+
+    private static final InputAction[] VALUES = values();
+
+    private final int keyCode;
+
+    InputAction(int keyCode) {
+        this.keyCode = keyCode;
+    }
+
+    /**
+     * Action bound to a key, or null if the key isn't used
+     * @param keyCode
+     * @return
+     */
+    public static InputAction forKey(int keyCode) {
+        for (InputAction a : VALUES)
+            if (a.keyCode == keyCode) return a;
+        return null;
+    }
+
+    static InputAction of(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
@@ -0,0 +1,65 @@
+package controller;
+
+/**
+ * Input-to-display latency per action. For every key press that was applied, records how long it
+ * waited for the simulation tick and how long until the first frame drawn after it was shown.
+ * Only touched from the game loop thread.
+ */
+public class InputLatency {
+    private static final int MAX_PENDING = 64;
+
+    private final int actions = InputAction.values().length;
+    private final long[] count = new long[actions];
+    private final long[] queueSum = new long[actions];
+    private final long[] totalSum = new long[actions];
+    private final long[] totalMax = new long[actions];
+
+    private final int[] pendingAction = new int[MAX_PENDING];
+    private final long[] pendingInput = new long[MAX_PENDING];
+    private final long[] pendingApplied = new long[MAX_PENDING];
+    private int pending = 0;
+
+    /**
+     * An input has been applied to the game
+     * @param action
+     * @param inputNanos when the key went down
+     * @param appliedNanos
+     */
+    void applied(InputAction action, long inputNanos, long appliedNanos) {
+        if (pending == MAX_PENDING) return;
+        pendingAction[pending] = action.ordinal();
+        pendingInput[pending] = inputNanos;
+        pendingApplied[pending] = appliedNanos;
+        pending++;
+    }
+
+    /**
+     * A frame showing everything applied so far has been presented
+     * @param nanos
+     */
+    void presented(long nanos) {
+        for (int i = 0; i < pending; i++) {
+            int a = pendingAction[i];
+            long total = nanos - pendingInput[i];
+            count[a]++;
+            queueSum[a] += pendingApplied[i] - pendingInput[i];
+            totalSum[a] += total;
+            if (total > totalMax[a]) totalMax[a] = total;
+        }
+        pending = 0;
+    }
+
+    /**
+     * One line per action that was used: count, mean wait for the tick, mean and max until shown
+     * @return
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder("Input latency (ms): action count tick-wait display max\n");
+        for (int a = 0; a < actions; a++) {
+            if (count[a] == 0) continue;
+            sb.append(String.format("%-10s %6d %9.2f %7.2f %6.2f%n", InputAction.of(a), count[a],
+                    queueSum[a] / 1e6 / count[a], totalSum[a] / 1e6 / count[a], totalMax[a] / 1e6));
+        }
+        return sb.toString();
+    }
+}
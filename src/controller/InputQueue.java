@@ -0,0 +1,55 @@
+package controller;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer single-consumer ring of timestamped key transitions. The EDT offers, the game
+ * loop drains, neither side takes a lock or allocates.
+ */
+final class InputQueue {
+    private static final int CAPACITY = 256;
+    private static final int MASK = CAPACITY - 1;
+
+    interface Sink {
+        void accept(InputAction action, boolean down, long nanos);
+    }
+
+    private final int[] codes = new int[CAPACITY];
+    private final long[] times = new long[CAPACITY];
+    /** next slot to read, only written by the consumer */
+    private final AtomicLong head = new AtomicLong();
+    /** next slot to write, only written by the producer */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Producer side
+     * @param action
+     * @param down true for press, false for release
+     * @param nanos System.nanoTime() of the transition
+     * @return false if the queue is full and the transition was dropped
+     */
+    boolean offer(InputAction action, boolean down, long nanos) {
+        long t = tail.get();
+        if (t - head.get() == CAPACITY) return false;
+        int i = (int) t & MASK;
+        codes[i] = action.ordinal() << 1 | (down ? 1 : 0);
+        times[i] = nanos;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side, hands every queued transition to the sink in order
+     * @param sink
+     */
+    void drain(Sink sink) {
+        long h = head.get();
+        long t = tail.get();
+        for (; h < t; h++) {
+            int i = (int) h & MASK;
+            int code = codes[i];
+            sink.accept(InputAction.of(code >>> 1), (code & 1) != 0, times[i]);
+        }
+        head.lazySet(h);
+    }
+}
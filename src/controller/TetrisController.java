@@ -1,101 +1,371 @@
 package controller;
 
 import model.GameState;
+import model.UndoStack;
+import replay.ReplayFormat;
+import replay.ReplayRecorder;
 import util.AudioManager;
+import util.SoundEffect;
 
 import javax.swing.*;
 import java.awt.event.*;
+import java.util.function.LongConsumer;
 
 /**
- * @ Overall handles keyboard input, game timing, repainting and audio
+ * @ Overall handles keyboard input, game timing and audio. Key handlers only timestamp key
+ * transitions into a queue, the game loop's fixed tick drains it and applies gravity, auto shift
+ * and soft drop itself, so held keys don't depend on the OS key repeat.
  */
-public class TetrisController implements ActionListener, KeyListener {
+public class TetrisController implements KeyListener {
 
     private final GameState state;
-    private final JComponent target;
-    private final Timer timer;
     private final AudioManager audio;
+    private final ReplayRecorder recorder;
+    private final Handling handling;
 
-    public TetrisController(GameState state, JComponent repaintTarget, AudioManager audio ) {
+    private final InputQueue input = new InputQueue();
+    private final InputQueue.Sink inputSink = this::apply;
+    private final InputLatency latency = new InputLatency();
+    private final boolean[] keyDown = new boolean[InputAction.values().length];
+
+    private long gravityNanos = 0;
+    private boolean softDropHeld = false;
+    private boolean endHandled = false;
+    private long playNanos = 0;
+    private LongConsumer onGameOver;
+    private Runnable onChange;
+    private long lastChange = -1;
+    private UndoStack undo;
+    private long undoPiece = -1;
+    private long lastPieceCount;
+    private int lastLines;
+
+    private boolean leftHeld = false, rightHeld = false;
+    private int shiftDir = 0;
+    private long shiftNanos = 0, nextShiftNanos = 0;
+
+    private volatile GameLoop loop;
+
+    public TetrisController(GameState state, JComponent inputSource, AudioManager audio ) {
+        this(state, inputSource, audio, null);
+    }
+
+    public TetrisController(GameState state, JComponent inputSource, AudioManager audio, ReplayRecorder recorder) {
+        this(state, inputSource, audio, recorder, Handling.fromSystemProperties());
+    }
+
+    /**
+     * @param recorder receives every input and gravity tick, may be null
+     * @param handling auto shift and soft drop settings
+     */
+    public TetrisController(GameState state, JComponent inputSource, AudioManager audio, ReplayRecorder recorder,
+                            Handling handling) {
         this.state = state;
-        this.target = repaintTarget;
         this.audio = audio;
+        this.recorder = recorder;
+        this.handling = handling;
+        this.lastPieceCount = state.getPieceCount();
+        this.lastLines = state.getLinesCleared();
 
-        /**
-         * Starts gravity at the models dop delay
-         */
-        this.timer = new Timer(state.getDropDelay(), this);
-        this.timer.start();
-
-        repaintTarget.addKeyListener(this);
-        repaintTarget.setFocusable(true);
-        repaintTarget.requestFocusInWindow();
+        inputSource.addKeyListener(this);
+        inputSource.setFocusable(true);
+        inputSource.requestFocusInWindow();
 
         audio.startGameplayLoop();
     }
 
     /**
-     *
-     * @param e the event to be processed.
-     * advance gravity, resync delay, repaint, and check end audio.
+     * Starts the game loop thread
+     * @param renderFrame draws one frame, called on the loop thread with the state locked
+     * @param refreshRate display refresh rate in Hz
      */
-    @Override
-    public void actionPerformed(ActionEvent e) {
-        state.stepGravity();
-        timer.setDelay(state.getDropDelay());
-        target.repaint();
-        checkEndAudio();
+    public void start(Runnable renderFrame, int refreshRate) {
+        Runnable frame = () -> {
+            renderFrame.run();
+            latency.presented(System.nanoTime());
+        };
+        loop = new GameLoop(state, this::tick, frame, refreshRate);
+        loop.start();
+    }
+
+    public void stop() {
+        if (loop != null) loop.stop();
     }
 
     /**
-     *
-     * @param e the event to be processed. Maps the key action example left, right, pause restart etc
+     * Called on the game loop thread, with the state locked, once each game ends
+     * @param onGameOver receives the time played in milliseconds, pauses excluded
      */
-    @Override
-    public void keyPressed(KeyEvent e) {
-        switch (e.getKeyCode()) {
-            case KeyEvent.VK_LEFT  -> state.moveLeft();
-            case KeyEvent.VK_RIGHT -> state.moveRight();
-            case KeyEvent.VK_DOWN  -> {
-                timer.setDelay(GameState.DROP_MS_FAST);
+    public void setOnGameOver(LongConsumer onGameOver) {
+        this.onGameOver = onGameOver;
+    }
+
+    /**
+     * Called on the game loop thread, with the state locked, after every tick that changed the game
+     * @param onChange
+     */
+    public void setOnChange(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    /**
+     * Practice mode: the start of every piece is kept on the stack and UNDO takes the game back
+     * to the start of the previous one. Leave unset when recording a replay, rewinds aren't recorded.
+     * @param undo
+     */
+    public void setUndoStack(UndoStack undo) {
+        this.undo = undo;
+    }
+
+    /**
+     * Latency figures so far, read them with the state locked
+     * @return
+     */
+    public InputLatency getLatency() {
+        return latency;
+    }
+
+    /**
+     * One fixed simulation step: apply queued input, auto shift, then advance gravity and fire a
+     * drop whenever a full interval has passed
+     */
+    private void tick() {
+        input.drain(inputSink);
+        if (state.isPaused() || state.isGameOver()) {
+            gravityNanos = 0;
+        } else {
+            autoShift();
+            playNanos += GameLoop.TICK_NANOS;
+            gravityNanos += GameLoop.TICK_NANOS;
+            long interval = gravityIntervalNanos();
+            if (gravityNanos >= interval) {
+                gravityNanos -= interval;
+                record(ReplayFormat.GRAVITY);
+                state.stepGravity();
+                checkEndAudio();
+            }
+        }
+        playLockEffects();
+        if (undo != null && state.getPieceCount() != undoPiece) {
+            undoPiece = state.getPieceCount();
+            undo.push(state);
+        }
+        if (onChange != null && state.getChangeCount() != lastChange) {
+            lastChange = state.getChangeCount();
+            onChange.run();
+        }
+    }
+
+    /**
+     * Lock, line clear or tetris sound for pieces that locked since the last tick
+     */
+    private void playLockEffects() {
+        long pieces = state.getPieceCount();
+        if (pieces == lastPieceCount) return;
+        int lines = state.getLinesCleared();
+        int cleared = lines - lastLines;
+        lastPieceCount = pieces;
+        lastLines = lines;
+        if (cleared >= 4) audio.playEffect(SoundEffect.TETRIS);
+        else if (cleared > 0) audio.playEffect(SoundEffect.LINE_CLEAR);
+        else audio.playEffect(SoundEffect.LOCK);
+    }
+
+    private long gravityIntervalNanos() {
+        long interval = state.getDropDelay() * 1_000_000L;
+        return softDropHeld ? Math.max(GameLoop.TICK_NANOS, interval / handling.softDropFactor()) : interval;
+    }
+
+    /**
+     * How far the current gravity interval has run, from 0 to 1, for frame interpolation
+     * @return
+     */
+    public double gravityFraction() {
+        return Math.min(1.0, (double) gravityNanos / gravityIntervalNanos());
+    }
+
+    /**
+     * Repeats the held direction once DAS has passed, every ARR after that
+     */
+    private void autoShift() {
+        if (shiftDir == 0) return;
+        shiftNanos += GameLoop.TICK_NANOS;
+        if (shiftNanos < nextShiftNanos) return;
+        if (handling.arrMs() == 0) {
+            for (int i = 0; i < state.getPlayfield().getColumns() && shift(shiftDir); i++) {
+                // slide to the wall
+            }
+        } else {
+            shift(shiftDir);
+        }
+        nextShiftNanos += handling.arrMs() * 1_000_000L;
+    }
+
+    /**
+     * Shifts the piece and records the move only when it happened, a blocked shift changes nothing
+     * so leaving it out of the replay keeps held keys against a wall from filling it
+     * @param dir -1 left, 1 right
+     * @return true if the piece moved
+     */
+    private boolean shift(int dir) {
+        int col = state.getCurrent().col;
+        if (dir < 0) state.moveLeft();
+        else state.moveRight();
+        boolean moved = state.getCurrent().col != col;
+        if (moved) {
+            record(dir < 0 ? ReplayFormat.LEFT : ReplayFormat.RIGHT);
+            audio.playEffect(SoundEffect.MOVE);
+        }
+        return moved;
+    }
+
+    private void startShift(int dir) {
+        shiftDir = dir;
+        shiftNanos = 0;
+        nextShiftNanos = handling.dasMs() * 1_000_000L;
+    }
+
+    /**
+     * Applies one key transition on the game loop thread
+     * @param action
+     * @param down
+     * @param nanos when the key changed
+     */
+    private void apply(InputAction action, boolean down, long nanos) {
+        if (!down) {
+            switch (action) {
+                case LEFT -> {
+                    leftHeld = false;
+                    if (shiftDir < 0) {
+                        if (rightHeld) startShift(1);
+                        else shiftDir = 0;
+                    }
+                }
+                case RIGHT -> {
+                    rightHeld = false;
+                    if (shiftDir > 0) {
+                        if (leftHeld) startShift(-1);
+                        else shiftDir = 0;
+                    }
+                }
+                case SOFT_DROP -> softDropHeld = false;
+                default -> { }
+            }
+            return;
+        }
+        switch (action) {
+            case LEFT -> {
+                leftHeld = true;
+                startShift(-1);
+                shift(-1);
+            }
+            case RIGHT -> {
+                rightHeld = true;
+                startShift(1);
+                shift(1);
+            }
+            case SOFT_DROP -> {
+                softDropHeld = true;
+                record(ReplayFormat.SOFT_DROP);
                 state.softDropOnce();
             }
-            case KeyEvent.VK_UP    -> state.rotateCW();
-            case KeyEvent.VK_SPACE -> state.hardDrop();
-            case KeyEvent.VK_P     -> {
+            case ROTATE -> {
+                int rot = state.getCurrent().rot;
+                record(ReplayFormat.ROTATE);
+                state.rotateCW();
+                if (state.getCurrent().rot != rot) audio.playEffect(SoundEffect.ROTATE);
+            }
+            case HARD_DROP -> {
+                record(ReplayFormat.HARD_DROP);
+                state.hardDrop();
+            }
+            case PAUSE -> {
+                record(ReplayFormat.PAUSE);
                 state.togglePause();
-                if (state.isPaused()) { timer.stop(); audio.pauseGameplay(); }
-                else { timer.start(); audio.resumeGameplay(); }
+                if (state.isPaused()) audio.pauseGameplay();
+                else audio.resumeGameplay();
             }
-            case KeyEvent.VK_R     -> {
+            case RESET -> {
+                record(ReplayFormat.RESET);
                 state.reset();
-                timer.setDelay(state.getDropDelay());
-                if (!state.isPaused()) timer.start();
+                gravityNanos = 0;
+                playNanos = 0;
+                lastLines = 0;
+                endHandled = false;
                 audio.startGameplayLoop();
+                if (undo != null) {
+                    undo.clear();
+                    undoPiece = -1;
+                }
+            }
+            case UNDO -> {
+                if (undo != null && undo.size() > 0) {
+                    if (undo.size() > 1) undo.discard();
+                    rewind();
+                }
             }
         }
-        target.repaint();
+        latency.applied(action, nanos, System.nanoTime());
         checkEndAudio();
     }
 
     /**
-     * Handles when DOWN is release it'll do back to normal speed
+     * Queues a key press with its timestamp, OS key repeat is ignored since the tick repeats held keys itself
+     * @param e the event to be processed
+     */
+    @Override
+    public void keyPressed(KeyEvent e) {
+        InputAction action = InputAction.forKey(e.getKeyCode());
+        if (action == null || keyDown[action.ordinal()]) return;
+        keyDown[action.ordinal()] = true;
+        input.offer(action, true, System.nanoTime());
+        if (loop != null) loop.wake();
+    }
+
+    /**
+     * Queues a key release, DOWN goes back to normal speed and a held direction stops repeating
      * @param e the event to be processed
      */
     @Override
     public void keyReleased(KeyEvent e) {
-        if (e.getKeyCode() == KeyEvent.VK_DOWN)
-            timer.setDelay(state.getDropDelay());
+        InputAction action = InputAction.forKey(e.getKeyCode());
+        if (action == null || !keyDown[action.ordinal()]) return;
+        keyDown[action.ordinal()] = false;
+        input.offer(action, false, System.nanoTime());
+        if (loop != null) loop.wake();
     }
     @Override
     public void keyTyped(KeyEvent e) {}
 
     /**
-     * If the game is over the timer will stop and play the win or lose audio
+     * Passes an event to the replay recorder when there is one
+     * @param event
+     */
+    private void record(int event) {
+        if (recorder != null) recorder.record(event);
+    }
+
+    /**
+     * Restores the position below the top of the undo stack, which the next tick saves again
+     */
+    private void rewind() {
+        boolean wasOver = state.isGameOver();
+        undo.pop(state);
+        undoPiece = -1;
+        lastPieceCount = state.getPieceCount();
+        lastLines = state.getLinesCleared();
+        gravityNanos = 0;
+        endHandled = state.isGameOver();
+        if (wasOver && !endHandled) audio.startGameplayLoop();
+    }
+
+    /**
+     * The first time the game is over play the win or lose audio and report the game
      */
     private void checkEndAudio() {
-        if (state.isGameOver()) {
-            timer.stop();
+        if (state.isGameOver() && !endHandled) {
+            endHandled = true;
+            if (onGameOver != null) onGameOver.accept(playNanos / 1_000_000);
             if (state.isWin())
                 audio.playWin();
             else
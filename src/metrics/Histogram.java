@@ -0,0 +1,88 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of non-negative longs. Values below 16 get a bucket each, above
+ * that every power of two is split into 8 buckets, so percentiles are within 12.5%. Recording is
+ * two atomic adds and never allocates.
+ */
+public class Histogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = LINEAR + (63 - (SUB_BITS + 1)) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param value negative values are counted as 0
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucket(value));
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) m = max.get();
+    }
+
+    private static int bucket(long v) {
+        if (v < LINEAR) return (int) v;
+        int e = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (e - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (e - SUB_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Largest value that falls in a bucket
+     * @param b
+     * @return
+     */
+    private static long upperBound(int b) {
+        if (b < LINEAR) return b;
+        int e = (b - LINEAR) / SUB_BUCKETS + SUB_BITS + 1;
+        long sub = (b - LINEAR) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (e - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Point-in-time view, buckets being recorded into meanwhile may or may not be included
+     * @return
+     */
+    public HistogramSnapshot snapshot() {
+        long[] c = new long[BUCKETS];
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            c[b] = counts.get(b);
+            total += c[b];
+        }
+        long m = max.get();
+        return new HistogramSnapshot(total, percentile(c, total, 0.50, m), percentile(c, total, 0.99, m), m);
+    }
+
+    private static long percentile(long[] c, long total, double p, long max) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int b = 0; b < c.length; b++) {
+            seen += c[b];
+            if (seen >= rank) return Math.min(upperBound(b), max);
+        }
+        return max;
+    }
+
+    public void reset() {
+        for (int b = 0; b < BUCKETS; b++) counts.set(b, 0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,42 @@
+package metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Summary of a histogram, shown as composite data over JMX
+ */
+public class HistogramSnapshot {
+    private final long count;
+    private final long p50;
+    private final long p99;
+    private final long max;
+
+    @ConstructorProperties({"count", "p50", "p99", "max"})
+    public HistogramSnapshot(long count, long p50, long p99, long max) {
+        this.count = count;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + count + " p50=" + p50 + " p99=" + p99 + " max=" + max;
+    }
+}
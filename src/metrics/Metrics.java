@@ -0,0 +1,100 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global instrumentation. Turned on with -Dtetris.metrics=true; ENABLED is a static final so
+ * every guarded call site is dropped by the JIT when metrics are off. Recording never allocates.
+ */
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("tetris.metrics");
+
+    public static final Histogram STEP_GRAVITY = new Histogram("stepGravity");
+    public static final Histogram LOCK_PIECE = new Histogram("lockPiece");
+    public static final Histogram CLEAR_LINES = new Histogram("clearLines");
+    public static final Histogram RENDER = new Histogram("render");
+    public static final Histogram FRAME_TIME = new Histogram("frameTime");
+    public static final Histogram TICK_ALLOCATED_BYTES = new Histogram("tickAllocatedBytes");
+    public static final Histogram EDT_LATENCY = new Histogram("edtLatency");
+    public static final AtomicLong DROPPED_FRAMES = new AtomicLong();
+
+    private static final Histogram[] ALL = {
+            STEP_GRAVITY, LOCK_PIECE, CLEAR_LINES, RENDER, FRAME_TIME, TICK_ALLOCATED_BYTES, EDT_LATENCY
+    };
+
+    private Metrics() {
+    }
+
+    /**
+     * Holds the thread bean, so java.management is only touched once metrics are on
+     */
+    private static final class Threads {
+        static final com.sun.management.ThreadMXBean BEAN = threadBean();
+
+        private static com.sun.management.ThreadMXBean threadBean() {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean t
+                    && t.isThreadAllocatedMemorySupported()) {
+                t.setThreadAllocatedMemoryEnabled(true);
+                return t;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Bytes allocated by the calling thread so far, -1 if metrics are off or the JVM can't tell
+     * @return
+     */
+    public static long allocatedBytes() {
+        if (!ENABLED) return -1;
+        com.sun.management.ThreadMXBean threads = Threads.BEAN;
+        return threads == null ? -1 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Registers the MBean and starts the rolling log when -Dtetris.metrics.log is set. Does
+     * nothing when metrics are off.
+     */
+    public static void start() {
+        if (!ENABLED) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName("tetris:type=Metrics"));
+        } catch (JMException e) {
+            System.err.println("Couldn't register metrics MBean: " + e.getMessage());
+        }
+        String log = System.getProperty("tetris.metrics.log");
+        if (log != null)
+            new MetricsLog(Path.of(log), Integer.getInteger("tetris.metrics.interval", 10)).start();
+    }
+
+    /**
+     * One line with every histogram and counter
+     * @return
+     */
+    public static String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Histogram h : ALL) sb.append(h.getName()).append("[").append(h.snapshot()).append("] ");
+        return sb.append("droppedFrames=").append(DROPPED_FRAMES.get()).toString();
+    }
+
+    public static void reset() {
+        for (Histogram h : ALL) h.reset();
+        DROPPED_FRAMES.set(0);
+    }
+
+    private static class Bean implements MetricsMXBean {
+        public HistogramSnapshot getStepGravity() { return STEP_GRAVITY.snapshot(); }
+        public HistogramSnapshot getLockPiece() { return LOCK_PIECE.snapshot(); }
+        public HistogramSnapshot getClearLines() { return CLEAR_LINES.snapshot(); }
+        public HistogramSnapshot getRender() { return RENDER.snapshot(); }
+        public HistogramSnapshot getFrameTime() { return FRAME_TIME.snapshot(); }
+        public HistogramSnapshot getTickAllocatedBytes() { return TICK_ALLOCATED_BYTES.snapshot(); }
+        public HistogramSnapshot getEdtLatency() { return EDT_LATENCY.snapshot(); }
+        public long getDroppedFrames() { return DROPPED_FRAMES.get(); }
+        public void reset() { Metrics.reset(); }
+    }
+}
@@ -0,0 +1,54 @@
+package metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+
+/**
+ * Appends Metrics.summary() to a file at a fixed interval. When the file passes MAX_BYTES it is
+ * moved to file.1, replacing the previous one, and a fresh file is started.
+ */
+class MetricsLog implements Runnable {
+    private static final long MAX_BYTES = 1024 * 1024;
+
+    private final Path file;
+    private final Path previous;
+    private final long intervalMs;
+
+    MetricsLog(Path file, int intervalSeconds) {
+        this.file = file;
+        this.previous = file.resolveSibling(file.getFileName() + ".1");
+        this.intervalMs = Math.max(1, intervalSeconds) * 1000L;
+    }
+
+    void start() {
+        Thread t = new Thread(this, "metrics-log");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(intervalMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                if (Files.exists(file) && Files.size(file) > MAX_BYTES)
+                    Files.move(file, previous, StandardCopyOption.REPLACE_EXISTING);
+                String line = LocalDateTime.now() + " " + Metrics.summary() + System.lineSeparator();
+                Files.writeString(file, line, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Couldn't write metrics log, logging stopped");
+                return;
+            }
+        }
+    }
+}
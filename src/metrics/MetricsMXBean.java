@@ -0,0 +1,24 @@
+package metrics;
+
+/**
+ * Runtime metrics published under tetris:type=Metrics. Timings are in nanoseconds, allocation in bytes.
+ */
+public interface MetricsMXBean {
+    HistogramSnapshot getStepGravity();
+
+    HistogramSnapshot getLockPiece();
+
+    HistogramSnapshot getClearLines();
+
+    HistogramSnapshot getRender();
+
+    HistogramSnapshot getFrameTime();
+
+    HistogramSnapshot getTickAllocatedBytes();
+
+    HistogramSnapshot getEdtLatency();
+
+    long getDroppedFrames();
+
+    void reset();
+}
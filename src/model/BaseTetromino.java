@@ -1,13 +1,11 @@
 package model;
 
-import java.awt.Color;
-import java.util.ArrayList;
-import java.util.List;
-
 
 public abstract class BaseTetromino {
     protected final int[][][] rotations;
-    protected final Color color;
+    protected final int[][] rowMasks;
+    protected final int[][] cellRows;
+    protected final int[][] cellCols;
 
     /**
      * Peice identifier
@@ -17,20 +15,36 @@ public abstract class BaseTetromino {
 
 
     /**
-     * Construct from a string seed
+     * Construct from a string seed, colours are up to the view via getIndex()
      * @param seed
-     * @param color
      */
-    protected BaseTetromino(String[] seed, Color color) {
+    protected BaseTetromino(String[] seed) {
         this.rotations = buildRotations(parse(seed));
-        this.color = color;
+        this.rowMasks = buildRowMasks(rotations);
+        this.cellRows = new int[rotations.length][];
+        this.cellCols = new int[rotations.length][];
+        buildCells(rotations, cellRows, cellCols);
     }
 
 
     public int[][][] getRotations() { return rotations; }
-    public Color getColor() {
-        return color;
-    }
+
+    /**
+     * Occupancy bits per row of a rotation, bit c is column c of the shape
+     * @param rot
+     * @return
+     */
+    public int[] getRowMasks(int rot) { return rowMasks[rot]; }
+    public int getWidth(int rot) { return rotations[rot][0].length; }
+    public int getHeight(int rot) { return rotations[rot].length; }
+
+    /**
+     * Row and column offsets of the filled cells of a rotation
+     * @param rot
+     * @return
+     */
+    public int[] getCellRows(int rot) { return cellRows[rot]; }
+    public int[] getCellCols(int rot) { return cellCols[rot]; }
 
 
     /**
@@ -66,6 +80,47 @@ public abstract class BaseTetromino {
         return out;
     }
 
+    /**
+     * Packs each row of every rotation into a bitmask for the bitboard
+     * @param rotations
+     * @return
+     */
+    private static int[][] buildRowMasks(int[][][] rotations) {
+        int[][] out = new int[rotations.length][];
+        for (int i = 0; i < rotations.length; i++) {
+            int[][] s = rotations[i];
+            out[i] = new int[s.length];
+            for (int r = 0; r < s.length; r++)
+                for (int c = 0; c < s[r].length; c++)
+                    if (s[r][c] != 0) out[i][r] |= 1 << c;
+        }
+        return out;
+    }
+
+    /**
+     * Lists the filled cells of every rotation as row/col offsets
+     * @param rotations
+     * @param rowsOut
+     * @param colsOut
+     */
+    private static void buildCells(int[][][] rotations, int[][] rowsOut, int[][] colsOut) {
+        for (int i = 0; i < rotations.length; i++) {
+            int[][] s = rotations[i];
+            int n = 0;
+            for (int[] row : s)
+                for (int v : row) if (v != 0) n++;
+            rowsOut[i] = new int[n];
+            colsOut[i] = new int[n];
+            int k = 0;
+            for (int r = 0; r < s.length; r++)
+                for (int c = 0; c < s[r].length; c++)
+                    if (s[r][c] != 0) {
+                        rowsOut[i][k] = r;
+                        colsOut[i][k++] = c;
+                    }
+        }
+    }
+
     /**
      * rotates 90 degree clockwise
      * @param m
@@ -88,22 +143,20 @@ public abstract class BaseTetromino {
      */
     private static int[][] trim(int[][] m) {
         int h = m.length, w = m[0].length;
-        List<Integer> rs = new ArrayList<>(), cs = new ArrayList<>();
+        int top = h, bottom = -1, left = w, right = -1;
         for (int r = 0; r < h; r++) {
-            boolean any = false;
-            for (int c = 0; c < w; c++) if (m[r][c] != 0) { any = true; break; }
-            if (any) rs.add(r);
-        }
-        for (int c = 0; c < w; c++) {
-            boolean any = false;
-            for (int r = 0; r < h; r++) if (m[r][c] != 0) { any = true; break; }
-            if (any) cs.add(c);
+            for (int c = 0; c < w; c++) {
+                if (m[r][c] == 0) continue;
+                top = Math.min(top, r);
+                bottom = Math.max(bottom, r);
+                left = Math.min(left, c);
+                right = Math.max(right, c);
+            }
         }
-        if (rs.isEmpty() || cs.isEmpty()) return new int[][]{{0}};
-        int[][] out = new int[rs.size()][cs.size()];
-        for (int i = 0; i < rs.size(); i++)
-            for (int j = 0; j < cs.size(); j++)
-                out[i][j] = m[rs.get(i)][cs.get(j)];
+        if (bottom < 0) return new int[][]{{0}};
+        int[][] out = new int[bottom - top + 1][right - left + 1];
+        for (int i = 0; i < out.length; i++)
+            System.arraycopy(m[top + i], left, out[i], 0, out[i].length);
         return out;
     }
 }
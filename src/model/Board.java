@@ -0,0 +1,770 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Bitboard playfield of any size. Each row is one or more long words with bit c set when column c
+ * is filled, the colour index of every cell lives in a side array that only the renderer reads.
+ * Search copies can skip the colour array and track occupancy only.
+ *
+ * Rows live in a circular buffer: row 0 is wherever the base points, so rising garbage and line
+ * clears rotate the base instead of moving the whole board. A clear only scans the rows changed
+ * since the last one, moves whichever side of the cleared lines is shorter and rotates the k freed
+ * rows to the top, so tall stacks and wide wells cost in proportion to what actually moves.
+ *
+ * Coloured boards also stamp every row with a version number whenever its content changes, so
+ * snapshots of the same board only copy the rows that differ.
+ *
+ * Boards can keep a Zobrist-style hash of their occupancy: the XOR of one key per non-empty word,
+ * mixed from the word's position and its bits. It is computed on the first hash() and from then on
+ * placing, clearing and rising rows re-key only the rows they move. Copies and snapshots carry it,
+ * boards that are never hashed never pay for it.
+ */
+public class Board {
+    public static final int EMPTY = -1;
+    /** Colour index of garbage rows, the first one after the seven tetrominoes */
+    public static final int GARBAGE = 7;
+
+    private static final long KEY_STEP = 0x9E3779B97F4A7C15L;
+
+    private final int rows;
+    private final int cols;
+    private final int words;
+    private final long[] fullWords;
+
+    /** Occupancy by physical slot, words per slot */
+    private final long[] bits;
+    private final int[][] cells;
+    private final int[][] spare;
+    private final long[] stamps;
+    private long nextStamp = 0;
+    private long hash = 0;
+    /** The hash is up to date and every change keeps it so */
+    private boolean hashed = false;
+
+    /** Physical slot of row 0 */
+    private int base = 0;
+    /** Every row above this one is empty */
+    private int top;
+    /** Rows changed since the last clear, the only ones that can be full */
+    private int changedFrom, changedTo;
+
+    /**
+     * Creates an empty board
+     * @param rows
+     * @param cols
+     */
+    public Board(int rows, int cols) {
+        this(rows, cols, true);
+    }
+
+    /**
+     * Creates an empty board
+     * @param rows
+     * @param cols
+     * @param withCells false for an occupancy-only board without colours
+     */
+    public Board(int rows, int cols, boolean withCells) {
+        if (rows < 1 || cols < 1)
+            throw new IllegalArgumentException("Board must have at least one row and column: " + rows + "x" + cols);
+        this.rows = rows;
+        this.cols = cols;
+        this.words = (cols + 63) >>> 6;
+        this.fullWords = new long[words];
+        for (int w = 0; w < words; w++) {
+            int bitsInWord = Math.min(64, cols - w * 64);
+            fullWords[w] = bitsInWord == 64 ? -1L : (1L << bitsInWord) - 1;
+        }
+        this.bits = new long[rows * words];
+        this.cells = withCells ? new int[rows][cols] : null;
+        this.spare = withCells ? new int[rows][] : null;
+        this.stamps = withCells ? new long[rows] : null;
+        clear();
+    }
+
+    /**
+     * Occupancy-only copy of this board for search
+     * @return
+     */
+    public Board copyMasks() {
+        Board b = new Board(rows, cols, false);
+        b.copyMasksFrom(this);
+        return b;
+    }
+
+    /**
+     * Overwrites the occupancy of this board with another board of the same size, colours are left alone
+     * @param src
+     */
+    public void copyMasksFrom(Board src) {
+        if (cells == null) {
+            System.arraycopy(src.bits, 0, bits, 0, bits.length);
+            base = src.base;
+        } else {
+            for (int r = 0; r < rows; r++)
+                System.arraycopy(src.bits, src.slot(r) * words, bits, slot(r) * words, words);
+            touchAll();
+        }
+        top = src.top;
+        changedFrom = src.changedFrom;
+        changedTo = src.changedTo;
+        hash = src.hash;
+        hashed = src.hashed;
+    }
+
+    /**
+     * Empties every row
+     */
+    public void clear() {
+        Arrays.fill(bits, 0);
+        base = 0;
+        top = rows;
+        noneChanged();
+        hash = 0;
+        if (cells != null) {
+            for (int[] row : cells) Arrays.fill(row, EMPTY);
+            touchAll();
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return cols;
+    }
+
+    /**
+     * Long words per row, column c is bit c % 64 of word c / 64
+     * @return
+     */
+    public int words() {
+        return words;
+    }
+
+    /**
+     * Every row above this one is empty, so scans can start here
+     * @return
+     */
+    public int topRow() {
+        return top;
+    }
+
+    private int slot(int row) {
+        int s = base + row;
+        return s >= rows ? s - rows : s;
+    }
+
+    /**
+     * Occupancy mask of a row on a board of up to 32 columns, bit c is column c
+     * @param row
+     * @return
+     */
+    public int mask(int row) {
+        if (cols > 32) throw new IllegalStateException("Board is wider than an int mask: " + cols);
+        return (int) bits[slot(row) * words];
+    }
+
+    /**
+     * One word of a row's occupancy
+     * @param row
+     * @param w 0 to words() - 1
+     * @return
+     */
+    public long word(int row, int w) {
+        return bits[slot(row) * words + w];
+    }
+
+    public boolean isFilled(int row, int col) {
+        return (bits[slot(row) * words + (col >>> 6)] & (1L << col)) != 0;
+    }
+
+    /**
+     * Hash of the occupancy, equal boards of the same size have equal hashes. The first call
+     * computes it, later changes keep it up to date.
+     * @return
+     */
+    public long hash() {
+        if (!hashed) rehash();
+        return hash;
+    }
+
+    /**
+     * Key of one word, 0 for an empty word so blank space costs nothing
+     * @param index row * words + word
+     * @param word
+     * @return
+     */
+    private static long key(int index, long word) {
+        return word == 0 ? 0 : SplitMix64.mix(word ^ index * KEY_STEP);
+    }
+
+    private void rehash() {
+        long h = 0;
+        for (int r = top; r < rows; r++) {
+            int s = slot(r) * words;
+            for (int w = 0; w < words; w++) h ^= key(r * words + w, bits[s + w]);
+        }
+        hash = h;
+        hashed = true;
+    }
+
+    /**
+     * Mask with every column set, on a board of up to 32 columns
+     * @return
+     */
+    public int fullRowMask() {
+        return (int) fullWords[0];
+    }
+
+    /**
+     * Overwrites a whole row of a board of up to 32 columns, every set bit of the mask gets the
+     * given colour index
+     * @param row
+     * @param mask
+     * @param index
+     */
+    public void setRow(int row, int mask, int index) {
+        if (cols > 32) throw new IllegalStateException("Board is wider than an int mask: " + cols);
+        long m = mask & fullWords[0];
+        int s = slot(row);
+        if (hashed) hash ^= key(row, bits[s]) ^ key(row, m);
+        bits[s] = m;
+        if (m != 0) top = Math.min(top, row);
+        changed(row, row);
+        if (cells == null) return;
+        stamps[s] = ++nextStamp;
+        int[] line = cells[s];
+        for (int c = 0; c < cols; c++)
+            line[c] = (m & (1L << c)) != 0 ? index : EMPTY;
+    }
+
+    /**
+     * Colour index per column of a row, EMPTY when free. Read by the renderer only, null on
+     * occupancy-only boards. The array belongs to the row's slot, fetch it again after the board changes.
+     * @param row
+     * @return
+     */
+    public int[] cellRow(int row) {
+        return cells == null ? null : cells[slot(row)];
+    }
+
+    /**
+     * Check if a tetromino at a given rot,row,col hits a wall, the floor or a filled cell
+     * @param t
+     * @param rot
+     * @param row
+     * @param col
+     * @return
+     */
+    public boolean collides(BaseTetromino t, int rot, int row, int col) {
+        int[] m = t.getRowMasks(rot);
+        int width = t.getWidth(rot);
+        if (col < 0 || col + width > cols || row + m.length > rows) return true;
+        if (words == 1) {
+            int r = row < 0 ? -row : 0;
+            for (int s = slot(row + r); r < m.length; r++, s = s + 1 == rows ? 0 : s + 1)
+                if ((bits[s] & ((long) m[r] << col)) != 0) return true;
+            return false;
+        }
+        int w = col >>> 6, shift = col & 63;
+        boolean spills = shift + width > 64;
+        for (int r = 0; r < m.length; r++) {
+            int br = row + r;
+            if (br < 0) continue;
+            int i = slot(br) * words + w;
+            if ((bits[i] & ((long) m[r] << shift)) != 0) return true;
+            if (spills && (bits[i + 1] & ((long) m[r] >>> (64 - shift))) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Row a tetromino comes to rest on when dropped straight down from the given row
+     * @param t
+     * @param rot
+     * @param row
+     * @param col
+     * @return
+     */
+    public int dropRow(BaseTetromino t, int rot, int row, int col) {
+        while (!collides(t, rot, row + 1, col)) row++;
+        return row;
+    }
+
+    /**
+     * Writes a tetromino into the board.
+     * @param t
+     * @param rot
+     * @param row
+     * @param col
+     * @return false if part of the piece is above the top of the board
+     */
+    public boolean place(BaseTetromino t, int rot, int row, int col) {
+        if (words == 1 && !hashed) return placeNarrow(t, rot, row, col);
+        int[] m = t.getRowMasks(rot);
+        int idx = t.getIndex();
+        int w = col >>> 6, shift = col & 63;
+        boolean spills = shift + t.getWidth(rot) > 64;
+        boolean inside = true;
+        for (int r = 0; r < m.length; r++) {
+            int br = row + r;
+            if (br < 0) {
+                inside = false;
+                continue;
+            }
+            int s = slot(br);
+            int i = s * words + w;
+            orWord(br * words + w, i, (long) m[r] << shift);
+            if (spills) orWord(br * words + w + 1, i + 1, (long) m[r] >>> (64 - shift));
+            if (cells == null) continue;
+            stamps[s] = ++nextStamp;
+            int[] line = cells[s];
+            for (int bit = m[r], c = col; bit != 0; bit >>>= 1, c++)
+                if ((bit & 1) != 0) line[c] = idx;
+        }
+        int first = Math.max(row, 0), last = row + m.length - 1;
+        if (last >= first) {
+            top = Math.min(top, first);
+            changed(first, last);
+        }
+        return inside;
+    }
+
+    /**
+     * place() for the usual board: one word a row and no hash to keep
+     */
+    private boolean placeNarrow(BaseTetromino t, int rot, int row, int col) {
+        int[] m = t.getRowMasks(rot);
+        int idx = t.getIndex();
+        boolean inside = true;
+        for (int r = 0; r < m.length; r++) {
+            int br = row + r;
+            if (br < 0) {
+                inside = false;
+                continue;
+            }
+            int s = slot(br);
+            bits[s] |= (long) m[r] << col;
+            if (cells == null) continue;
+            stamps[s] = ++nextStamp;
+            int[] line = cells[s];
+            for (int bit = m[r], c = col; bit != 0; bit >>>= 1, c++)
+                if ((bit & 1) != 0) line[c] = idx;
+        }
+        int first = Math.max(row, 0), last = row + m.length - 1;
+        if (last >= first) {
+            top = Math.min(top, first);
+            changed(first, last);
+        }
+        return inside;
+    }
+
+    private void orWord(int index, int i, long add) {
+        if (hashed) hash ^= key(index, bits[i]) ^ key(index, bits[i] | add);
+        bits[i] |= add;
+    }
+
+    private boolean isFull(int row) {
+        if (words == 1) return bits[slot(row)] == fullWords[0];
+        int s = slot(row) * words;
+        for (int w = 0; w < words; w++) if (bits[s + w] != fullWords[w]) return false;
+        return true;
+    }
+
+    /**
+     * Removes full rows. Only rows changed since the last call are checked, and whichever side of
+     * the cleared lines is shorter moves: the stack above comes down, or the rows below go up and
+     * the base rotates so the freed rows end up on top.
+     * @return number of rows cleared
+     */
+    public int clearFullRows() {
+        int from = changedFrom, to = changedTo;
+        noneChanged();
+        int lo = -1, hi = -1, cleared = 0;
+        for (int r = from; r <= to; r++) {
+            if (!isFull(r)) continue;
+            if (lo < 0) lo = r;
+            hi = r;
+            cleared++;
+        }
+        if (cleared == 0) return 0;
+        if (words == 1 && !hashed) {
+            clearNarrow(lo, hi, cleared);
+        } else if (hi - top <= rows - 1 - lo) {
+            // the stack above is shorter: compact downwards and empty the rows left on top
+            int write = hi, freed = 0;
+            for (int read = hi; read >= top; read--) {
+                if (read >= lo && isFull(read)) {
+                    if (hashed) keyRow(read, read);
+                    if (cells != null) spare[freed++] = cells[slot(read)];
+                    continue;
+                }
+                if (write != read) {
+                    if (hashed) {
+                        keyRow(read, read);
+                        keyRow(read, write);
+                    }
+                    moveRow(read, write);
+                }
+                write--;
+            }
+            for (int r = top, s = 0; r < top + cleared; r++, s++) emptyRow(r, s);
+        } else {
+            // the rows below are fewer: compact upwards, then rotate the freed rows to the top. The
+            // stack above keeps its slots but still moves down, so its keys change.
+            if (hashed) {
+                for (int r = top; r < lo; r++) {
+                    keyRow(r, r);
+                    keyRow(r, r + cleared);
+                }
+            }
+            int write = lo, freed = 0;
+            for (int read = lo; read < rows; read++) {
+                if (read <= hi && isFull(read)) {
+                    if (hashed) keyRow(read, read);
+                    if (cells != null) spare[freed++] = cells[slot(read)];
+                    continue;
+                }
+                // rows below the last cleared one end up back at their own index
+                if (hashed && read < hi) {
+                    keyRow(read, read);
+                    keyRow(read, write + cleared);
+                }
+                if (write != read) moveRow(read, write);
+                write++;
+            }
+            base = slot(rows - cleared);
+            for (int r = 0; r < cleared; r++) emptyRow(r, r);
+        }
+        top = Math.min(rows, top + cleared);
+        return cleared;
+    }
+
+    /**
+     * The compaction of clearFullRows() for the usual board: one word a row and no hash to keep
+     * @param lo first full row
+     * @param hi last full row
+     * @param cleared full rows between them
+     */
+    private void clearNarrow(int lo, int hi, int cleared) {
+        long full = fullWords[0];
+        int freed = 0;
+        if (hi - top <= rows - 1 - lo) {
+            int write = hi;
+            for (int read = hi; read >= top; read--) {
+                int sr = slot(read);
+                long m = bits[sr];
+                if (read >= lo && m == full) {
+                    if (cells != null) spare[freed++] = cells[sr];
+                    continue;
+                }
+                if (write != read) {
+                    int sw = slot(write);
+                    bits[sw] = m;
+                    if (cells != null) {
+                        cells[sw] = cells[sr];
+                        stamps[sw] = stamps[sr];
+                    }
+                }
+                write--;
+            }
+            for (int r = top, i = 0; r < top + cleared; r++, i++) emptyRow(r, i);
+        } else {
+            int write = lo;
+            for (int read = lo; read < rows; read++) {
+                int sr = slot(read);
+                long m = bits[sr];
+                if (read <= hi && m == full) {
+                    if (cells != null) spare[freed++] = cells[sr];
+                    continue;
+                }
+                int sw = slot(write);
+                bits[sw] = m;
+                if (cells != null) {
+                    cells[sw] = cells[sr];
+                    stamps[sw] = stamps[sr];
+                }
+                write++;
+            }
+            base = slot(rows - cleared);
+            for (int r = 0; r < cleared; r++) emptyRow(r, r);
+        }
+    }
+
+    /**
+     * Toggles a row's occupancy in and out of the hash, keyed as if it sat at the given index
+     * @param row
+     * @param at
+     */
+    private void keyRow(int row, int at) {
+        int s = slot(row) * words;
+        for (int w = 0; w < words; w++) hash ^= key(at * words + w, bits[s + w]);
+    }
+
+    /**
+     * Copies a row's occupancy, colours and stamp over another row
+     * @param from
+     * @param to
+     */
+    private void moveRow(int from, int to) {
+        int sf = slot(from), st = slot(to);
+        System.arraycopy(bits, sf * words, bits, st * words, words);
+        if (cells == null) return;
+        cells[st] = cells[sf];
+        stamps[st] = stamps[sf];
+    }
+
+    /**
+     * Empties a row, giving it the colour array of a cleared row
+     * @param row
+     * @param spareIndex
+     */
+    private void emptyRow(int row, int spareIndex) {
+        int s = slot(row);
+        if (words == 1) bits[s] = 0;
+        else Arrays.fill(bits, s * words, s * words + words, 0);
+        if (cells == null) return;
+        int[] line = spare[spareIndex];
+        spare[spareIndex] = null;
+        Arrays.fill(line, EMPTY);
+        cells[s] = line;
+        stamps[s] = ++nextStamp;
+    }
+
+    /**
+     * Pushes everything up and fills the bottom rows with garbage, full except for one hole
+     * @param n
+     * @param hole column left empty
+     * @param index colour of the garbage cells
+     * @return false if filled cells were pushed off the top
+     */
+    public boolean addGarbageRows(int n, int hole, int index) {
+        n = Math.min(n, rows);
+        if (n <= 0) return true;
+        boolean overflow = false;
+        for (int r = top; r < n && !overflow; r++) {
+            int s = slot(r) * words;
+            for (int w = 0; w < words; w++) overflow |= bits[s + w] != 0;
+        }
+        // every row moves up n, the ones in the top n slots fall off
+        if (hashed) {
+            for (int r = top; r < rows; r++) {
+                keyRow(r, r);
+                if (r >= n) keyRow(r, r - n);
+            }
+        }
+        // the top n slots wrap round to become the bottom n rows
+        base = slot(n);
+        for (int r = rows - n; r < rows; r++) {
+            int s = slot(r);
+            for (int w = 0; w < words; w++) bits[s * words + w] = fullWords[w];
+            bits[s * words + (hole >>> 6)] &= ~(1L << hole);
+            if (hashed) keyRow(r, r);
+            if (cells == null) continue;
+            int[] line = cells[s];
+            Arrays.fill(line, index);
+            line[hole] = EMPTY;
+            stamps[s] = ++nextStamp;
+        }
+        top = Math.max(0, top - n);
+        if (changedTo - n < 0) {
+            noneChanged();
+        } else {
+            changedFrom = Math.max(0, changedFrom - n);
+            changedTo -= n;
+        }
+        return !overflow;
+    }
+
+    private void changed(int first, int last) {
+        changedFrom = Math.min(changedFrom, first);
+        changedTo = Math.max(changedTo, last);
+    }
+
+    private void noneChanged() {
+        changedFrom = rows;
+        changedTo = -1;
+    }
+
+    private void touchAll() {
+        for (int r = 0; r < rows; r++) stamps[r] = ++nextStamp;
+    }
+
+    /**
+     * Copies the rows into a snapshot. Rows the snapshot already holds from an earlier save of
+     * this board are skipped.
+     * @param snap
+     */
+    void save(Snapshot snap) {
+        snap.hash = hash;
+        snap.hashed = hashed;
+        snap.top = top;
+        snap.changedFrom = changedFrom;
+        snap.changedTo = changedTo;
+        if (cells == null) {
+            copyOut(snap.masks);
+            return;
+        }
+        boolean same = snap.board == this;
+        saveRows(snap, same, 0, base, rows - base);
+        saveRows(snap, same, rows - base, 0, base);
+        snap.board = this;
+    }
+
+    /**
+     * Copies n consecutive slots, which hold rows r onwards, into a snapshot. Every write to a
+     * row renews its stamp, so a row with the stamp the snapshot has for it holds the same
+     * words and colours.
+     */
+    private void saveRows(Snapshot snap, boolean same, int r, int s, int n) {
+        for (int end = s + n, i = r * cols; s < end; r++, s++, i += cols) {
+            if (same && snap.stamps[r] == stamps[s]) continue;
+            if (words == 1) snap.masks[r] = bits[s];
+            else System.arraycopy(bits, s * words, snap.masks, r * words, words);
+            int[] line = cells[s];
+            for (int c = 0; c < cols; c++) snap.colours[i + c] = (byte) line[c];
+            snap.stamps[r] = stamps[s];
+        }
+    }
+
+    /**
+     * Restores rows saved by save() on a board of the same size. Rows that haven't changed since
+     * the save are left alone.
+     * @param snap
+     */
+    void load(Snapshot snap) {
+        hash = snap.hash;
+        hashed = snap.hashed;
+        top = snap.top;
+        changedFrom = snap.changedFrom;
+        changedTo = snap.changedTo;
+        if (cells == null) {
+            copyIn(snap.masks);
+            return;
+        }
+        boolean same = snap.board == this;
+        loadRows(snap, same, 0, base, rows - base);
+        loadRows(snap, same, rows - base, 0, base);
+    }
+
+    /**
+     * Copies rows r onwards out of a snapshot into n consecutive slots
+     */
+    private void loadRows(Snapshot snap, boolean same, int r, int s, int n) {
+        for (int end = s + n, i = r * cols; s < end; r++, s++, i += cols) {
+            if (same && snap.stamps[r] == stamps[s]) continue;
+            if (words == 1) bits[s] = snap.masks[r];
+            else System.arraycopy(snap.masks, r * words, bits, s * words, words);
+            int[] line = cells[s];
+            for (int c = 0; c < cols; c++) line[c] = snap.colours[i + c];
+            stamps[s] = same ? snap.stamps[r] : ++nextStamp;
+        }
+    }
+
+    /**
+     * Occupancy words in row order, starting from row 0
+     * @param dst rows * words() longs
+     */
+    private void copyOut(long[] dst) {
+        int head = (rows - base) * words;
+        System.arraycopy(bits, base * words, dst, 0, head);
+        if (base > 0) System.arraycopy(bits, 0, dst, head, base * words);
+    }
+
+    private void copyIn(long[] src) {
+        int head = (rows - base) * words;
+        System.arraycopy(src, 0, bits, base * words, head);
+        if (base > 0) System.arraycopy(src, head, bits, 0, base * words);
+    }
+
+    /**
+     * Bytes writeTo() needs at most
+     * @return
+     */
+    public int maxSerializedBytes() {
+        return rows * ((cols > 32 ? 8 * words : 4) + cols);
+    }
+
+    /**
+     * Writes every row as its mask, or its words on boards wider than 32 columns, followed by one
+     * colour byte per filled cell
+     * @param buf
+     */
+    public void writeTo(ByteBuffer buf) {
+        if (cols <= 32) {
+            for (int r = 0; r < rows; r++) {
+                int s = slot(r);
+                int m = (int) bits[s];
+                buf.putInt(m);
+                while (m != 0) {
+                    int c = Integer.numberOfTrailingZeros(m);
+                    buf.put((byte) (cells == null ? 0 : cells[s][c]));
+                    m &= m - 1;
+                }
+            }
+            return;
+        }
+        for (int r = 0; r < rows; r++) {
+            int s = slot(r);
+            for (int w = 0; w < words; w++) {
+                long m = bits[s * words + w];
+                buf.putLong(m);
+                while (m != 0) {
+                    int c = w * 64 + Long.numberOfTrailingZeros(m);
+                    buf.put((byte) (cells == null ? 0 : cells[s][c]));
+                    m &= m - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads rows written by writeTo() on a board of the same size
+     * @param buf
+     */
+    public void readFrom(ByteBuffer buf) {
+        // every row is rewritten, so the ring can start over at slot 0
+        base = 0;
+        int first = rows;
+        if (cols <= 32) {
+            for (int r = 0; r < rows; r++) {
+                int m = buf.getInt();
+                bits[r] = m & 0xFFFFFFFFL;
+                if (m != 0 && first == rows) first = r;
+                int[] line = cells == null ? null : cells[r];
+                if (line != null) {
+                    Arrays.fill(line, EMPTY);
+                    stamps[r] = ++nextStamp;
+                }
+                for (; m != 0; m &= m - 1) {
+                    byte idx = buf.get();
+                    if (line != null) line[Integer.numberOfTrailingZeros(m)] = idx;
+                }
+            }
+        } else {
+            for (int r = 0; r < rows; r++) {
+                int[] line = cells == null ? null : cells[r];
+                if (line != null) {
+                    Arrays.fill(line, EMPTY);
+                    stamps[r] = ++nextStamp;
+                }
+                for (int w = 0; w < words; w++) {
+                    long m = buf.getLong();
+                    bits[r * words + w] = m;
+                    if (m != 0 && first == rows) first = r;
+                    for (int at = w * 64; m != 0; m &= m - 1) {
+                        byte idx = buf.get();
+                        if (line != null) line[at + Long.numberOfTrailingZeros(m)] = idx;
+                    }
+                }
+            }
+        }
+        top = first;
+        if (hashed) rehash();
+        noneChanged();
+        if (top < rows) changed(top, rows - 1);
+    }
+}
@@ -0,0 +1,23 @@
+package model;
+
+/**
+ * What changed on screen since the last frame: a band of board rows and the HUD strip
+ * (score, lines, level, status and the next-piece preview). Reused every frame.
+ */
+public class DirtyRegion {
+    public int top;
+    public int bottom;
+    public boolean hud;
+
+    /**
+     * True when there are no board rows in the band
+     * @return
+     */
+    public boolean noRows() {
+        return bottom < top;
+    }
+
+    public boolean isEmpty() {
+        return noRows() && !hud;
+    }
+}
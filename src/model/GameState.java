@@ -1,13 +1,15 @@
 package model;
 
-import java.awt.Color;
-import java.util.Random;
-import java.util.function.Supplier;
+import metrics.Metrics;
+
+import java.nio.ByteBuffer;
 
 /**
- *  Core model for the Tetris game.
+ *  Core model for the Tetris game. Pure Java with no AWT/Swing dependency so it can run headless,
+ *  pieces and cells are identified by index and the view maps those to colours.
  */
 public class GameState {
+    /** Default board size */
     public static final int ROWS = 20;
     public static final int COLUMNS = 10;
 
@@ -16,42 +18,65 @@ public class GameState {
 
     public static final int WIN_LINES = 40;
 
-    private final int[][] board = new int[ROWS][COLUMNS];
-    private final Color[] palette = new Color[7];
+    /**
+     * Column offsets tried in order when rotating, the first that fits wins
+     */
+    public static final int[] ROTATION_KICKS = {0, -1, 1};
 
-    private final Random rng = new Random();
+    /**
+     * Garbage rows sent to opponents in versus for clearing 0 to 4 lines at once
+     */
+    public static final int[] GARBAGE_FOR_CLEARED = {0, 0, 1, 2, 4};
+
+    private static final long PIECE_SALT = 0x5DEECE66DL;
+
+    private final Board board;
+
+    private final PieceGenerator generator;
     private Piece cur;
     private Piece next;
 
     private boolean paused = false;
     private boolean gameOver = false;
     private boolean win = false;
+    private int winLines = WIN_LINES;
 
     private int score = 0;
     private int linesCleared = 0;
     private int level = 1;
     private int dropDelay = DROP_MS_START;
+    private long pieceCount = 0;
+    private int garbageOut = 0;
 
-    private static final Supplier<BaseTetromino>[] FACTORY = new Supplier[]{
-            IShape::new, JShape::new, LShape::new, OShape::new, SShape::new, TShape::new, ZShape::new
-    };
+    private int dirtyTop = Integer.MAX_VALUE;
+    private int dirtyBottom = -1;
+    private boolean hudDirty = false;
+    private long changes = 0;
 
     /**
-     * Initialize board, palette, and start a new game.
+     * Initialize board and start a new game with an unseeded uniform piece sequence.
      */
     public GameState() {
-        for (int r = 0; r < ROWS; r++)
-            for (int c = 0; c < COLUMNS; c++)
-                board[r][c] = -1;
-
-        palette[0] = new Color(0, 240, 240);
-        palette[1] = new Color(0, 0, 255);
-        palette[2] = new Color(255, 165, 0);
-        palette[3] = new Color(255, 255, 0);
-        palette[4] = new Color(0, 255, 0);
-        palette[5] = new Color(160, 0, 240);
-        palette[6] = new Color(255, 0, 0);
+        this(PieceGenerator.unseeded());
+    }
 
+    /**
+     * Initialize board and start a new game drawing pieces from the given generator.
+     * @param generator
+     */
+    public GameState(PieceGenerator generator) {
+        this(generator, ROWS, COLUMNS);
+    }
+
+    /**
+     * Initialize a board of any size and start a new game drawing pieces from the given generator.
+     * @param generator
+     * @param rows
+     * @param columns
+     */
+    public GameState(PieceGenerator generator, int rows, int columns) {
+        this.generator = generator;
+        this.board = new Board(rows, columns);
         reset();
     }
 
@@ -59,21 +84,21 @@ public class GameState {
      * Reset game state to starting values.
      */
     public void reset() {
-        for (int r = 0; r < ROWS; r++)
-            for (int c = 0; c < COLUMNS; c++)
-                board[r][c] = -1;
+        board.clear();
         score = 0;
         linesCleared = 0;
+        garbageOut = 0;
         level = 1;
         dropDelay = DROP_MS_START;
         paused = false;
         gameOver = false;
         win = false;
-        cur = randomPiece();
-        next = randomPiece();
+        cur = randomPiece(cur);
+        next = randomPiece(next);
         if (collides(cur, cur.row, cur.col, cur.rot)) {
             gameOver = true;
         }
+        markAll();
     }
 
     /**
@@ -83,7 +108,10 @@ public class GameState {
     public boolean stepGravity() {
         if (paused || gameOver)
             return false;
-        return tryMove(cur.row + 1, cur.col, cur.rot, true);
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        boolean moved = tryMove(cur.row + 1, cur.col, cur.rot, true);
+        if (Metrics.ENABLED) Metrics.STEP_GRAVITY.record(System.nanoTime() - start);
+        return moved;
     }
 
     /**
@@ -91,6 +119,7 @@ public class GameState {
      */
     public void hardDrop() {
         if (paused || gameOver) return;
+        markPiece(cur);
         while (!collides(cur, cur.row + 1, cur.col, cur.rot)) cur.row++;
         lockPiece();
     }
@@ -111,40 +140,116 @@ public class GameState {
             tryMove(cur.row + 1, cur.col, cur.rot, true);
     }
 
+    /**
+     * True if gravity would move the current piece down rather than lock it
+     * @return
+     */
+    public boolean canFall() {
+        return !collides(cur, cur.row + 1, cur.col, cur.rot);
+    }
+
     /**
      * Rotate piece clockwise
      */
     public void rotateCW() {
         if (paused || gameOver) return;
         int nr = (cur.rot + 1) % 4;
-        if (!collides(cur, cur.row, cur.col, nr))
-            cur.rot = nr;
-        else if (!collides(cur, cur.row, cur.col - 1, nr)){
-            cur.col--; cur.rot = nr;
-        }
-        else if (!collides(cur, cur.row, cur.col + 1, nr)){
-            cur.col++; cur.rot = nr;
+        for (int kick : ROTATION_KICKS) {
+            if (!collides(cur, cur.row, cur.col + kick, nr)) {
+                markPiece(cur);
+                cur.col += kick;
+                cur.rot = nr;
+                markPiece(cur);
+                return;
+            }
         }
     }
 
+    /**
+     * Puts the current piece straight at a resting position and locks it, for bots that
+     * pick a placement instead of steering the piece key by key.
+     * @param rot
+     * @param row
+     * @param col
+     * @return false if the position is blocked or the piece would not rest there
+     */
+    public boolean lockAt(int rot, int row, int col) {
+        if (paused || gameOver) return false;
+        if (collides(cur, row, col, rot) || !collides(cur, row + 1, col, rot)) return false;
+        markPiece(cur);
+        cur.rot = rot;
+        cur.row = row;
+        cur.col = col;
+        lockPiece();
+        return true;
+    }
+
+    /**
+     * Receives garbage from an opponent: the stack rises by the given rows and the falling piece
+     * is pushed up out of the way. Losing any cells off the top ends the game.
+     * @param rows
+     * @param hole column left open in every garbage row
+     */
+    public void addGarbage(int rows, int hole) {
+        if (gameOver || rows <= 0) return;
+        if (!board.addGarbageRows(rows, hole, Board.GARBAGE)) gameOver = true;
+        while (collides(cur, cur.row, cur.col, cur.rot)) cur.row--;
+        markAll();
+    }
+
+    /**
+     * Garbage earned by line clears since the last call, for versus
+     * @return
+     */
+    public int drainGarbageOut() {
+        int g = garbageOut;
+        garbageOut = 0;
+        return g;
+    }
+
     /**
      * toggle pause
      */
     public void togglePause() {
-        if (!gameOver)
+        if (!gameOver) {
             paused = !paused;
+            hudDirty = true;
+            changes++;
+        }
+    }
+
+    /**
+     * Hands over the rows and HUD that changed since the last call and starts tracking afresh
+     * @param out
+     */
+    public void drainDirty(DirtyRegion out) {
+        out.top = dirtyTop;
+        out.bottom = dirtyBottom;
+        out.hud = hudDirty;
+        dirtyTop = Integer.MAX_VALUE;
+        dirtyBottom = -1;
+        hudDirty = false;
+    }
+
+    /**
+     * Colour index per column of a board row, for the renderer
+     * @param row
+     * @return
+     */
+    public int[] getRowColours(int row) {
+        return board.cellRow(row);
     }
 
     /**
      * Getters
      * @return
      */
-    public int[][] getBoard() {
+    public Board getPlayfield() {
         return board;
     }
 
-    public Color[] getPalette() {
-        return palette;
+    public PieceGenerator getGenerator() {
+        return generator;
     }
 
     public Piece getNext() {
@@ -155,6 +260,34 @@ public class GameState {
         return cur;
     }
 
+    /**
+     * Pieces locked since this state was created, reset() does not clear it
+     * @return
+     */
+    public long getPieceCount() {
+        return pieceCount;
+    }
+
+    /**
+     * Bumped by every change to the board, the pieces or the HUD. Observers that poll compare it
+     * with the value they saw last instead of diffing the game.
+     * @return
+     */
+    public long getChangeCount() {
+        return changes;
+    }
+
+    /**
+     * Zobrist hash of the position: the board's hash, kept up to date as pieces lock and lines
+     * clear, combined with keys for the falling piece and the preview
+     * @return
+     */
+    public long zobrist() {
+        long piece = cur.type.getIndex() | cur.rot << 4 | (long) (cur.row & 0xFFFF) << 8
+                | (long) (cur.col & 0xFFFF) << 24 | (long) next.type.getIndex() << 40;
+        return board.hash() ^ SplitMix64.mix(piece ^ PIECE_SALT);
+    }
+
     public boolean isPaused() {
         return paused;
     }
@@ -166,6 +299,14 @@ public class GameState {
         return win;
     }
 
+    /**
+     * Lines that win the game, WIN_LINES unless changed. Not part of snapshots or the wire format.
+     * @param lines 0 for a game that only ends when the stack tops out
+     */
+    public void setWinLines(int lines) {
+        winLines = lines;
+    }
+
     public int getScore() {
         return score;
     }
@@ -182,14 +323,20 @@ public class GameState {
     }
 
     /**
-     * This picks a new random tetromino
+     * This picks the next tetromino of the sequence from the shared registry, reusing the given piece when there is one
+     * @param reuse
      * @return
      */
-    private Piece randomPiece() {
-        BaseTetromino t = FACTORY[rng.nextInt(FACTORY.length)].get();
-        int rot = 0;
-        int spawnCol = (COLUMNS - t.getRotations()[0][0].length) / 2;
-        return new Piece(t, rot, 0, spawnCol);
+    Piece randomPiece(Piece reuse) {
+        int idx = generator.next();
+        BaseTetromino t = Tetrominoes.get(idx);
+        int spawnCol = Tetrominoes.spawnColumn(idx, board.getColumns());
+        if (reuse == null) return new Piece(t, 0, 0, spawnCol);
+        reuse.type = t;
+        reuse.rot = 0;
+        reuse.row = 0;
+        reuse.col = spawnCol;
+        return reuse;
     }
 
     /**
@@ -201,18 +348,7 @@ public class GameState {
      * @return
      */
     private boolean collides(Piece p, int newRow, int newCol, int newRot) {
-        int[][] s = p.type.getRotations()[newRot];
-        int h = s.length, w = s[0].length;
-        for (int r = 0; r < h; r++) {
-            for (int c = 0; c < w; c++) {
-                if (s[r][c] == 0) continue;
-                int br = newRow + r, bc = newCol + c;
-                if (bc < 0 || bc >= COLUMNS || br >= ROWS) return true;
-                if (br < 0) continue;
-                if (board[br][bc] != -1) return true;
-            }
-        }
-        return false;
+        return board.collides(p.type, newRot, newRow, newCol);
     }
 
     /**
@@ -225,9 +361,11 @@ public class GameState {
      */
     private boolean tryMove(int nr, int nc, int rot, boolean lockIfBlocked) {
         if (!collides(cur, nr, nc, rot)) {
+            markPiece(cur);
             cur.row = nr;
             cur.col = nc;
             cur.rot = rot;
+            markPiece(cur);
             return  true;
         }     else if (lockIfBlocked && nr == cur.row + 1 && nc == cur.col) {
             lockPiece();
@@ -239,32 +377,52 @@ public class GameState {
      *  Lock current piece onto the board, clear lines, update score, then spawn next piece
      */
     private void lockPiece() {
-        int idx = cur.type.getIndex();
-        int[][] s = cur.shape();
-        for (int r = 0; r < s.length; r++) {
-            for (int c = 0; c < s[0].length; c++) {
-                if (s[r][c] == 0) continue;
-                int br = cur.row + r, bc = cur.col + c;
-                if (br >= 0 && br < ROWS && bc >= 0 && bc < COLUMNS) {
-                    board[br][bc] = idx;
-                } else {
-                    gameOver = true;
-                }
-            }
-        }
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        if (!board.place(cur.type, cur.rot, cur.row, cur.col))
+            gameOver = true;
+        pieceCount++;
+        markPiece(cur);
         int cleared = clearLines();
+        if (cleared > 0) {
+            markRows(0, cur.row + cur.type.getHeight(cur.rot) - 1);
+            hudDirty = true;
+        }
         updateScore(cleared);
         if (!gameOver) spawnNext();
+        if (gameOver) markAll();
+        if (Metrics.ENABLED) Metrics.LOCK_PIECE.record(System.nanoTime() - start);
     }
 
     /**
      * Replace current piece with next and gives a new preview.
      */
     private void spawnNext() {
+        Piece spent = cur;
         cur = next;
-        next = randomPiece();
+        next = randomPiece(spent);
         if (collides(cur, cur.row, cur.col,cur.rot))
             gameOver = true;
+        markPiece(cur);
+        hudDirty = true;
+    }
+
+    /**
+     * Marks the rows a piece covers as changed
+     * @param p
+     */
+    private void markPiece(Piece p) {
+        markRows(p.row, p.row + p.type.getHeight(p.rot) - 1);
+    }
+
+    private void markRows(int top, int bottom) {
+        changes++;
+        dirtyTop = Math.min(dirtyTop, Math.max(0, top));
+        dirtyBottom = Math.max(dirtyBottom, Math.min(board.getRows() - 1, bottom));
+    }
+
+    private void markAll() {
+        markRows(0, board.getRows() - 1);
+        hudDirty = true;
     }
 
     /**
@@ -272,22 +430,12 @@ public class GameState {
      * @return
      */
     private int clearLines() {
-        int cleared = 0;
-        for (int r = ROWS -1 ; r >= 0; r--) {
-            boolean full = true;
-            for (int c = 0; c < COLUMNS; c++)
-                if (board[r][c] == -1) {
-                    full = false;
-                }
-            if (full) {
-                cleared++;
-                for (int rr = r; rr > 0; rr--) System.arraycopy(board[rr - 1], 0, board[rr], 0, COLUMNS);
-                for (int c = 0; c < COLUMNS; c++) board[0][c] = -1;
-                r++;
-            }
-        }
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        int cleared = board.clearFullRows();
+        if (Metrics.ENABLED) Metrics.CLEAR_LINES.record(System.nanoTime() - start);
+        garbageOut += GARBAGE_FOR_CLEARED[cleared];
         linesCleared += cleared;
-        if (linesCleared >= WIN_LINES) { win = true; gameOver = true; }
+        if (winLines > 0 && linesCleared >= winLines) { win = true; gameOver = true; }
         return cleared;
     }
 
@@ -296,18 +444,161 @@ public class GameState {
      * @param cleared
      */
     private void updateScore(int cleared) {
-        int add = switch (cleared) {
+        score += lineScore(cleared);
+        int newLevel = levelFor(linesCleared);
+        if (newLevel != level) {
+            level = newLevel;
+            dropDelay = Math.max(90,DROP_MS_START - (level - 1) * 50);
+        }
+    }
+
+    /**
+     * Points for clearing lines with one piece, shared with the batch environment so both score alike
+     * @param cleared 0 to 4
+     * @return
+     */
+    public static int lineScore(int cleared) {
+        return switch (cleared) {
             case 1 -> 100;
             case 2 -> 300;
             case 3 -> 500;
             case 4 -> 800;
             default -> 0;
         };
-        score += add;
-        int newLevel = 1 + linesCleared / 10;
-        if (newLevel != level) {
-            level = newLevel;
-            dropDelay = Math.max(90,DROP_MS_START - (level - 1) * 50);
-        }
+    }
+
+    /**
+     * Level reached after clearing the given number of lines
+     * @param lines
+     * @return
+     */
+    public static int levelFor(int lines) {
+        return 1 + lines / 10;
+    }
+
+    /**
+     * Saves the position into a new snapshot
+     * @return
+     */
+    public Snapshot snapshot() {
+        Snapshot s = new Snapshot(this);
+        saveTo(s);
+        return s;
+    }
+
+    /**
+     * Saves the position into an existing snapshot, overwriting it without allocating
+     * @param s
+     */
+    public void saveTo(Snapshot s) {
+        board.save(s);
+        s.curType = cur.type.getIndex();
+        s.curRot = cur.rot;
+        s.curRow = cur.row;
+        s.curCol = cur.col;
+        s.nextType = next.type.getIndex();
+        s.nextRot = next.rot;
+        s.nextRow = next.row;
+        s.nextCol = next.col;
+        s.paused = paused;
+        s.gameOver = gameOver;
+        s.win = win;
+        s.score = score;
+        s.linesCleared = linesCleared;
+        s.level = level;
+        s.dropDelay = dropDelay;
+        s.garbageOut = garbageOut;
+        s.pieceCount = pieceCount;
+        s.generator.clear();
+        generator.writeState(s.generator);
+        s.markSaved();
+    }
+
+    /**
+     * Goes back to a saved position. The snapshot must come from a game with a generator of the same mode.
+     * @param s
+     */
+    public void restore(Snapshot s) {
+        board.load(s);
+        cur.type = Tetrominoes.get(s.curType);
+        cur.rot = s.curRot;
+        cur.row = s.curRow;
+        cur.col = s.curCol;
+        next.type = Tetrominoes.get(s.nextType);
+        next.rot = s.nextRot;
+        next.row = s.nextRow;
+        next.col = s.nextCol;
+        paused = s.paused;
+        gameOver = s.gameOver;
+        win = s.win;
+        score = s.score;
+        linesCleared = s.linesCleared;
+        level = s.level;
+        dropDelay = s.dropDelay;
+        garbageOut = s.garbageOut;
+        pieceCount = s.pieceCount;
+        s.generator.rewind();
+        generator.readState(s.generator);
+        markAll();
+    }
+
+    /**
+     * Writes the full game state, including the piece generator, so readFrom() can resume it exactly
+     * @param buf
+     */
+    public void writeTo(ByteBuffer buf) {
+        board.writeTo(buf);
+        writePiece(buf, cur);
+        writePiece(buf, next);
+        buf.put((byte) ((paused ? 1 : 0) | (gameOver ? 2 : 0) | (win ? 4 : 0)));
+        buf.putInt(score);
+        buf.putInt(linesCleared);
+        buf.putInt(level);
+        buf.putInt(dropDelay);
+        buf.putLong(pieceCount);
+        generator.writeState(buf);
+    }
+
+    /**
+     * Restores a state written by writeTo(), the generator must be of the same mode
+     * @param buf
+     */
+    public void readFrom(ByteBuffer buf) {
+        board.readFrom(buf);
+        readPiece(buf, cur);
+        readPiece(buf, next);
+        int flags = buf.get();
+        paused = (flags & 1) != 0;
+        gameOver = (flags & 2) != 0;
+        win = (flags & 4) != 0;
+        score = buf.getInt();
+        linesCleared = buf.getInt();
+        level = buf.getInt();
+        dropDelay = buf.getInt();
+        pieceCount = buf.getLong();
+        generator.readState(buf);
+        markAll();
+    }
+
+    /**
+     * Upper bound on the bytes writeTo() produces
+     * @return
+     */
+    public int maxSerializedBytes() {
+        return board.maxSerializedBytes() + 64;
+    }
+
+    private static void writePiece(ByteBuffer buf, Piece p) {
+        buf.put((byte) p.type.getIndex());
+        buf.put((byte) p.rot);
+        buf.putShort((short) p.row);
+        buf.putShort((short) p.col);
+    }
+
+    private static void readPiece(ByteBuffer buf, Piece p) {
+        p.type = Tetrominoes.get(buf.get());
+        p.rot = buf.get();
+        p.row = buf.getShort();
+        p.col = buf.getShort();
     }
 }
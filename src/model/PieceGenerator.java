@@ -0,0 +1,151 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Source of the piece sequence. Each generator owns its own SplitMix64 stream, so parallel
+ * games never share state, and a mode plus seed reproduces a game exactly.
+ */
+public abstract class PieceGenerator {
+
+    public enum Mode { UNIFORM, BAG }
+
+    protected final SplitMix64 rng;
+    private final long seed;
+
+    protected PieceGenerator(long seed) {
+        this.seed = seed;
+        this.rng = new SplitMix64(seed);
+    }
+
+    /**
+     * Every piece type with equal probability on every draw
+     * @param seed
+     * @return
+     */
+    public static PieceGenerator uniform(long seed) {
+        return new UniformGenerator(seed);
+    }
+
+    /**
+     * Standard 7-bag, each type once per shuffled bag of seven
+     * @param seed
+     * @return
+     */
+    public static PieceGenerator bag(long seed) {
+        return new BagGenerator(seed);
+    }
+
+    public static PieceGenerator create(Mode mode, long seed) {
+        return mode == Mode.BAG ? bag(seed) : uniform(seed);
+    }
+
+    /**
+     * Uniform generator with an arbitrary seed, the classic behaviour of the game
+     * @return
+     */
+    public static PieceGenerator unseeded() {
+        return uniform(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Index of the next piece
+     * @return
+     */
+    public abstract int next();
+
+    public abstract Mode getMode();
+
+    /**
+     * Seed this generator started from
+     * @return
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Writes the position in the sequence so a game can be resumed mid-stream
+     * @param buf
+     */
+    public void writeState(ByteBuffer buf) {
+        buf.putLong(rng.getState());
+    }
+
+    /**
+     * Restores a position written by writeState() of a generator of the same mode
+     * @param buf
+     */
+    public void readState(ByteBuffer buf) {
+        rng.setState(buf.getLong());
+    }
+
+    /**
+     * New generator of the same mode seeded from this stream, for handing to another game or thread.
+     * Deterministic: the same parent produces the same children in the same order.
+     * @return
+     */
+    public PieceGenerator split() {
+        return create(getMode(), rng.nextLong());
+    }
+
+    private static final class UniformGenerator extends PieceGenerator {
+        UniformGenerator(long seed) {
+            super(seed);
+        }
+
+        @Override
+        public int next() {
+            return rng.nextInt(Tetrominoes.count());
+        }
+
+        @Override
+        public Mode getMode() {
+            return Mode.UNIFORM;
+        }
+    }
+
+    private static final class BagGenerator extends PieceGenerator {
+        private final int[] bag = new int[Tetrominoes.count()];
+        private int pos = bag.length;
+
+        BagGenerator(long seed) {
+            super(seed);
+        }
+
+        @Override
+        public int next() {
+            if (pos == bag.length) {
+                for (int i = 0; i < bag.length; i++) bag[i] = i;
+                for (int i = bag.length - 1; i > 0; i--) {
+                    int j = rng.nextInt(i + 1);
+                    int tmp = bag[i];
+                    bag[i] = bag[j];
+                    bag[j] = tmp;
+                }
+                pos = 0;
+            }
+            return bag[pos++];
+        }
+
+        @Override
+        public void writeState(ByteBuffer buf) {
+            super.writeState(buf);
+            buf.put((byte) pos);
+            for (int p : bag) buf.put((byte) p);
+        }
+
+        @Override
+        public void readState(ByteBuffer buf) {
+            super.readState(buf);
+            pos = buf.get();
+            for (int i = 0; i < bag.length; i++) bag[i] = buf.get();
+        }
+
+        @Override
+        public Mode getMode() {
+            return Mode.BAG;
+        }
+    }
+}
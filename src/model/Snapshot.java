@@ -0,0 +1,61 @@
+package model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Saved position of a game: row occupancy words and one colour byte per cell, both pieces, the counters
+ * and the piece generator. Snapshots are reusable, saving into one overwrites it without
+ * allocating, and saving or restoring only copies the colours of rows that changed since, so
+ * search and rewind can keep a pool and branch as often as they like.
+ */
+public class Snapshot {
+    private static final int GENERATOR_BYTES = 64;
+
+    final long[] masks;
+    final byte[] colours;
+    final long[] stamps;
+    Board board;
+    long hash;
+    boolean hashed;
+    int top, changedFrom, changedTo;
+    final ByteBuffer generator = ByteBuffer.allocate(GENERATOR_BYTES);
+
+    int curType, curRot, curRow, curCol;
+    int nextType, nextRot, nextRow, nextCol;
+    boolean paused, gameOver, win;
+    int score, linesCleared, level, dropDelay, garbageOut;
+    long pieceCount;
+
+    private boolean saved = false;
+
+    /**
+     * Creates an empty snapshot sized for the given game's board
+     * @param like
+     */
+    public Snapshot(GameState like) {
+        Board board = like.getPlayfield();
+        masks = new long[board.getRows() * board.words()];
+        colours = new byte[board.getRows() * board.getColumns()];
+        stamps = new long[board.getRows()];
+    }
+
+    /**
+     * True once something has been saved into it
+     * @return
+     */
+    public boolean isSaved() {
+        return saved;
+    }
+
+    void markSaved() {
+        saved = true;
+    }
+
+    public long getPieceCount() {
+        return pieceCount;
+    }
+
+    public int getScore() {
+        return score;
+    }
+}
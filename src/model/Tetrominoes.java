@@ -0,0 +1,56 @@
+package model;
+
+/**
+ * Immutable registry of the seven tetrominoes, built once at class-load time.
+ * Shapes never change, so every piece references the same table entry.
+ */
+public final class Tetrominoes {
+    private static final BaseTetromino[] SHAPES = {
+            new IShape(), new JShape(), new LShape(), new OShape(), new SShape(), new TShape(), new ZShape()
+    };
+
+    private static final int[] SPAWN_COLUMN = new int[SHAPES.length];
+
+    static {
+        for (int i = 0; i < SHAPES.length; i++)
+            SPAWN_COLUMN[i] = (GameState.COLUMNS - SHAPES[i].getWidth(0)) / 2;
+    }
+
+    private Tetrominoes() {}
+
+    /**
+     * Number of tetromino types
+     * @return
+     */
+    public static int count() {
+        return SHAPES.length;
+    }
+
+    /**
+     * Shared shape for a piece index
+     * @param index
+     * @return
+     */
+    public static BaseTetromino get(int index) {
+        return SHAPES[index];
+    }
+
+    /**
+     * Column a freshly spawned piece starts in, centred in a well of the default width
+     * @param index
+     * @return
+     */
+    public static int spawnColumn(int index) {
+        return SPAWN_COLUMN[index];
+    }
+
+    /**
+     * Column a freshly spawned piece starts in, centred in a well of the given width
+     * @param index
+     * @param columns
+     * @return
+     */
+    public static int spawnColumn(int index, int columns) {
+        return columns == GameState.COLUMNS ? SPAWN_COLUMN[index] : (columns - SHAPES[index].getWidth(0)) / 2;
+    }
+}
@@ -0,0 +1,62 @@
+package model;
+
+/**
+ * Bounded stack of positions for rewinding a game. The snapshots are allocated up front and
+ * reused, once the stack is full every push overwrites the oldest position.
+ */
+public class UndoStack {
+    private final Snapshot[] slots;
+    private int top = 0;
+    private int size = 0;
+
+    /**
+     * @param like game the positions will be taken from
+     * @param capacity most positions kept
+     */
+    public UndoStack(GameState like, int capacity) {
+        slots = new Snapshot[capacity];
+        for (int i = 0; i < capacity; i++) slots[i] = new Snapshot(like);
+    }
+
+    /**
+     * Saves the game's current position on top
+     * @param state
+     */
+    public void push(GameState state) {
+        state.saveTo(slots[top]);
+        top = (top + 1) % slots.length;
+        size = Math.min(size + 1, slots.length);
+    }
+
+    /**
+     * Restores the position on top and removes it
+     * @param state
+     * @return false if the stack was empty
+     */
+    public boolean pop(GameState state) {
+        if (size == 0) return false;
+        top = (top - 1 + slots.length) % slots.length;
+        size--;
+        state.restore(slots[top]);
+        return true;
+    }
+
+    /**
+     * Removes the position on top without restoring it
+     * @return false if the stack was empty
+     */
+    public boolean discard() {
+        if (size == 0) return false;
+        top = (top - 1 + slots.length) % slots.length;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,72 @@
+package replay;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of a replay file.
+ *
+ * Header: magic, version, generator mode, seed, start time in epoch millis.
+ * Body: one varint per event holding the milliseconds since the previous event shifted left
+ * by three bits and the event code in the low three bits, so a typical event is a single byte.
+ *
+ * Index: one entry per keyframe with the piece number, the file offset of the first event after
+ * the keyframe, the elapsed milliseconds at that point and the length-prefixed game state.
+ *
+ * Footer: offset of the index, keyframe count and INDEX_MAGIC. Files from an interrupted
+ * recording have no footer and their body runs to the end of the file.
+ */
+public final class ReplayFormat {
+    public static final int MAGIC = 0x54545250; // "TTRP"
+    public static final byte VERSION = 1;
+
+    public static final int LEFT = 0;
+    public static final int RIGHT = 1;
+    public static final int SOFT_DROP = 2;
+    public static final int ROTATE = 3;
+    public static final int HARD_DROP = 4;
+    public static final int PAUSE = 5;
+    public static final int RESET = 6;
+    public static final int GRAVITY = 7;
+
+    public static final int EVENT_BITS = 3;
+    public static final int EVENT_MASK = (1 << EVENT_BITS) - 1;
+
+    public static final int HEADER_BYTES = 4 + 1 + 1 + 8 + 8;
+
+    public static final int INDEX_MAGIC = 0x54544B49; // "TTKI"
+    public static final int KEYFRAME_INTERVAL = 16;
+    public static final int KEYFRAME_ENTRY_BYTES = 8 + 8 + 8 + 4;
+    public static final int FOOTER_BYTES = 8 + 4 + 4;
+
+    private ReplayFormat() {}
+
+    /**
+     * Writes an unsigned LEB128 varint
+     * @param buf
+     * @param v
+     */
+    public static void putVarLong(ByteBuffer buf, long v) {
+        while ((v & ~0x7FL) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint
+     * @param buf
+     * @return
+     */
+    public static long getVarLong(ByteBuffer buf) {
+        long v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            v |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return v;
+    }
+}
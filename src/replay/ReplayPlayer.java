@@ -0,0 +1,250 @@
+package replay;
+
+import model.GameState;
+import model.PieceGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Re-simulates a recorded game. The file is memory-mapped, events are decoded straight from the
+ * mapping and seeking restores the nearest keyframe before the target piece, so only a handful
+ * of pieces ever have to be re-simulated.
+ */
+public class ReplayPlayer implements AutoCloseable {
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final PieceGenerator.Mode mode;
+    private final long seed;
+    private final long startedAt;
+    private final int bodyEnd;
+
+    private final long[] keyPieces;
+    private final int[] keyOffsets;
+    private final long[] keyTimes;
+    private final int[] keyStates;
+
+    private final ByteBuffer body;
+    private final GameState state;
+    private final ByteBuffer initial;
+    private long timeMs;
+    private long nextTime;
+    private int nextEvent = -1;
+
+    /**
+     * Opens a replay and positions it at the start of the game
+     * @param file
+     * @throws IOException if the file is not a replay
+     */
+    public ReplayPlayer(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        int size = map.limit();
+        if (size < ReplayFormat.HEADER_BYTES || map.getInt(0) != ReplayFormat.MAGIC) {
+            channel.close();
+            throw new IOException("Not a replay file: " + file);
+        }
+        if (map.get(4) != ReplayFormat.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported replay version " + map.get(4) + ": " + file);
+        }
+        mode = PieceGenerator.Mode.values()[map.get(5)];
+        seed = map.getLong(6);
+        startedAt = map.getLong(14);
+
+        int count = 0;
+        int indexOffset = size;
+        if (size >= ReplayFormat.HEADER_BYTES + ReplayFormat.FOOTER_BYTES
+                && map.getInt(size - 4) == ReplayFormat.INDEX_MAGIC) {
+            indexOffset = (int) map.getLong(size - ReplayFormat.FOOTER_BYTES);
+            count = map.getInt(size - 8);
+        }
+        bodyEnd = indexOffset;
+        keyPieces = new long[count];
+        keyOffsets = new int[count];
+        keyTimes = new long[count];
+        keyStates = new int[count];
+        int p = indexOffset;
+        for (int i = 0; i < count; i++) {
+            keyPieces[i] = map.getLong(p);
+            keyOffsets[i] = (int) map.getLong(p + 8);
+            keyTimes[i] = map.getLong(p + 16);
+            keyStates[i] = p + ReplayFormat.KEYFRAME_ENTRY_BYTES;
+            p = keyStates[i] + map.getInt(p + 24);
+        }
+
+        body = map.duplicate();
+        body.limit(bodyEnd);
+        state = new GameState(PieceGenerator.create(mode, seed));
+        initial = ByteBuffer.allocate(state.maxSerializedBytes());
+        state.writeTo(initial);
+        initial.flip();
+        rewind();
+    }
+
+    /**
+     * Back to the first event of a freshly seeded game
+     */
+    public void rewind() {
+        state.readFrom(initial.duplicate());
+        body.position(ReplayFormat.HEADER_BYTES);
+        timeMs = 0;
+        readNext();
+    }
+
+    /**
+     * Jumps to the moment the given number of pieces had been locked, or the end of the replay
+     * if the game never got that far
+     * @param piece
+     */
+    public void seekToPiece(long piece) {
+        int k = lastKeyframeAtOrBefore(piece);
+        long from = k < 0 ? 0 : keyPieces[k];
+        long at = state.getPieceCount();
+        if (at > piece || at < from) {
+            if (k < 0) {
+                rewind();
+            } else {
+                ByteBuffer saved = map.duplicate();
+                saved.position(keyStates[k]);
+                state.readFrom(saved);
+                body.position(keyOffsets[k]);
+                timeMs = keyTimes[k];
+                readNext();
+            }
+        }
+        while (state.getPieceCount() < piece && step()) {
+            // re-simulate from the keyframe
+        }
+    }
+
+    private int lastKeyframeAtOrBefore(long piece) {
+        int lo = 0, hi = keyPieces.length - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keyPieces[mid] <= piece) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Applies the next event
+     * @return false at the end of the replay
+     */
+    public boolean step() {
+        if (nextEvent < 0) return false;
+        timeMs = nextTime;
+        apply(state, nextEvent);
+        readNext();
+        return true;
+    }
+
+    /**
+     * Applies every event up to and including the given replay time
+     * @param ms
+     */
+    public void advanceTo(long ms) {
+        while (nextEvent >= 0 && nextTime <= ms) step();
+    }
+
+    /**
+     * Re-simulates the rest of the game as fast as possible, without any rendering
+     */
+    public void runToEnd() {
+        while (step()) {
+            // nothing to wait for
+        }
+    }
+
+    /**
+     * Plays the rest of the game on the calling thread at a multiple of real time
+     * @param speed 1 for real time, 2 for twice as fast and so on
+     * @param onEvent called after every applied event, may be null
+     * @throws InterruptedException
+     */
+    public void play(double speed, Runnable onEvent) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        long startMs = timeMs;
+        while (nextEvent >= 0) {
+            long dueNanos = startNanos + (long) ((nextTime - startMs) * 1_000_000 / speed);
+            long wait = dueNanos - System.nanoTime();
+            if (wait > 0) Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            step();
+            if (onEvent != null) onEvent.run();
+        }
+    }
+
+    private void readNext() {
+        if (!body.hasRemaining()) {
+            nextEvent = -1;
+            return;
+        }
+        long v = ReplayFormat.getVarLong(body);
+        nextTime = timeMs + (v >>> ReplayFormat.EVENT_BITS);
+        nextEvent = (int) (v & ReplayFormat.EVENT_MASK);
+    }
+
+    /**
+     * Applies one recorded event to a game the same way the controller did
+     * @param state
+     * @param event
+     */
+    public static void apply(GameState state, int event) {
+        switch (event) {
+            case ReplayFormat.LEFT -> state.moveLeft();
+            case ReplayFormat.RIGHT -> state.moveRight();
+            case ReplayFormat.SOFT_DROP -> state.softDropOnce();
+            case ReplayFormat.ROTATE -> state.rotateCW();
+            case ReplayFormat.HARD_DROP -> state.hardDrop();
+            case ReplayFormat.PAUSE -> state.togglePause();
+            case ReplayFormat.RESET -> state.reset();
+            case ReplayFormat.GRAVITY -> state.stepGravity();
+        }
+    }
+
+    /**
+     * Game being re-simulated, the same object for the life of the player
+     * @return
+     */
+    public GameState getState() {
+        return state;
+    }
+
+    /**
+     * Replay time of the last applied event in milliseconds
+     * @return
+     */
+    public long getTimeMs() {
+        return timeMs;
+    }
+
+    public boolean isFinished() {
+        return nextEvent < 0;
+    }
+
+    public int getKeyframeCount() {
+        return keyPieces.length;
+    }
+
+    /**
+     * Wall-clock start of the recording in epoch millis
+     * @return
+     */
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
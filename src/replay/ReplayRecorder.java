@@ -0,0 +1,136 @@
+package replay;
+
+import model.GameState;
+import model.PieceGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the seed and every input and gravity tick of a game to a replay file. Events are
+ * encoded into a direct buffer and only hit the FileChannel when the buffer fills up or the
+ * recorder is closed, so recording an event is a couple of byte writes.
+ *
+ * Every KEYFRAME_INTERVAL pieces the full game state is kept aside as a keyframe, and the
+ * keyframes are written as an index after the events when the recorder is closed.
+ */
+public class ReplayRecorder implements AutoCloseable {
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_EVENT_BYTES = 10;
+
+    private final GameState state;
+    private final FileChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private ByteBuffer keyframes = ByteBuffer.allocate(4 * 1024);
+    private int keyframeCount = 0;
+    private long nextKeyframe;
+
+    private long written = 0;
+    private long lastNanos;
+    private long elapsedMs = 0;
+    private boolean failed = false;
+
+    /**
+     * Creates the replay file and writes the header
+     * @param file
+     * @param state freshly created game, recorded from its current state on
+     * @throws IOException
+     */
+    public ReplayRecorder(Path file, GameState state) throws IOException {
+        this.state = state;
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        PieceGenerator generator = state.getGenerator();
+        buf.putInt(ReplayFormat.MAGIC);
+        buf.put(ReplayFormat.VERSION);
+        buf.put((byte) generator.getMode().ordinal());
+        buf.putLong(generator.getSeed());
+        buf.putLong(System.currentTimeMillis());
+        nextKeyframe = state.getPieceCount() + ReplayFormat.KEYFRAME_INTERVAL;
+        lastNanos = System.nanoTime();
+    }
+
+    /**
+     * Appends one event stamped with the time since the previous one. Call before the event is
+     * applied to the game.
+     * @param event one of the ReplayFormat event codes
+     */
+    public void record(int event) {
+        if (failed) return;
+        if (state.getPieceCount() >= nextKeyframe) keyframe();
+        long now = System.nanoTime();
+        long deltaMs = (now - lastNanos) / 1_000_000;
+        lastNanos += deltaMs * 1_000_000;
+        elapsedMs += deltaMs;
+        if (buf.remaining() < MAX_EVENT_BYTES) flush();
+        ReplayFormat.putVarLong(buf, (deltaMs << ReplayFormat.EVENT_BITS) | event);
+    }
+
+    /**
+     * Keeps the current state with the file offset of the next event
+     */
+    private void keyframe() {
+        if (keyframes.remaining() < state.maxSerializedBytes() + ReplayFormat.KEYFRAME_ENTRY_BYTES) {
+            ByteBuffer bigger = ByteBuffer.allocate(keyframes.capacity() * 2);
+            keyframes.flip();
+            bigger.put(keyframes);
+            keyframes = bigger;
+        }
+        keyframes.putLong(state.getPieceCount());
+        keyframes.putLong(written + buf.position());
+        keyframes.putLong(elapsedMs);
+        int lengthAt = keyframes.position();
+        keyframes.putInt(0);
+        state.writeTo(keyframes);
+        keyframes.putInt(lengthAt, keyframes.position() - lengthAt - 4);
+        keyframeCount++;
+        nextKeyframe = state.getPieceCount() + ReplayFormat.KEYFRAME_INTERVAL;
+    }
+
+    /**
+     * Writes buffered events to the file
+     */
+    public void flush() {
+        if (failed) return;
+        buf.flip();
+        write(buf);
+        buf.clear();
+    }
+
+    private void write(ByteBuffer src) {
+        try {
+            while (src.hasRemaining()) written += channel.write(src);
+        } catch (IOException e) {
+            System.err.println("Couldn't write replay, recording stopped");
+            failed = true;
+        }
+    }
+
+    /**
+     * Writes the remaining events, then the keyframe index and the footer that points at it
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (!failed) {
+            long indexOffset = written;
+            keyframes.flip();
+            write(keyframes);
+            ByteBuffer footer = ByteBuffer.allocate(ReplayFormat.FOOTER_BYTES);
+            footer.putLong(indexOffset);
+            footer.putInt(keyframeCount);
+            footer.putInt(ReplayFormat.INDEX_MAGIC);
+            footer.flip();
+            write(footer);
+        }
+        failed = true;
+        channel.close();
+    }
+}
@@ -0,0 +1,431 @@
+package rl;
+
+import model.BaseTetromino;
+import model.GameState;
+import model.SplitMix64;
+import model.Tetrominoes;
+import replay.ReplayFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Many games stepped together for reinforcement-learning training. The games live in flat
+ * arrays, one row mask per board row and one slot per game for the pieces and counters, and
+ * follow the same rules as GameState: the same 7-bag sequence for a given seed, the same
+ * rotation kicks, locking, line clears and scoring through GameState.lineScore().
+ *
+ * step() takes one action per game, splits the games across persistent worker threads and
+ * writes one observation record per game into a caller-provided buffer. Nothing is allocated
+ * per step.
+ *
+ * A finished game reports done once, with its final board. The next step starts a new game in
+ * that slot and ignores the action, continuing the slot's piece sequence like GameState.reset().
+ */
+public class BatchEnv implements AutoCloseable {
+    public enum ActionMode {
+        /** action = rotation * COLUMNS + column, the piece drops straight down from the top */
+        PLACEMENT,
+        /** action = one of the ReplayFormat codes LEFT, RIGHT, SOFT_DROP, ROTATE, HARD_DROP or GRAVITY */
+        KEYS
+    }
+
+    public static final int ROWS = GameState.ROWS;
+    public static final int COLUMNS = GameState.COLUMNS;
+    public static final int PLACEMENT_ACTIONS = 4 * COLUMNS;
+
+    /** Observation record per game: ROWS int masks, then the fields below */
+    public static final int OBS_PIECE = ROWS * 4;
+    public static final int OBS_NEXT = OBS_PIECE + 1;
+    public static final int OBS_ROT = OBS_PIECE + 2;
+    public static final int OBS_COL = OBS_PIECE + 3;
+    /** short */
+    public static final int OBS_ROW = OBS_PIECE + 4;
+    /** 0 while running, 1 lost, 2 won */
+    public static final int OBS_DONE = OBS_PIECE + 6;
+    /** float, points scored by this step */
+    public static final int OBS_REWARD = OBS_PIECE + 8;
+    public static final int OBS_SCORE = OBS_REWARD + 4;
+    public static final int OBS_LINES = OBS_SCORE + 4;
+    public static final int OBS_BYTES = OBS_LINES + 4;
+
+    public static final byte RUNNING = 0;
+    public static final byte LOST = 1;
+    public static final byte WON = 2;
+
+    private static final int BAG = 7;
+
+    private final int n;
+    private final ActionMode mode;
+    private final long[] seeds;
+
+    private final int[] masks;
+    private final byte[] piece;
+    private final byte[] next;
+    private final byte[] rot;
+    private final int[] row;
+    private final int[] col;
+    private final int[] score;
+    private final int[] lines;
+    private final byte[] done;
+    private final long[] rng;
+    private final byte[] bag;
+    private final byte[] bagPos;
+
+    private final Worker[] workers;
+    private final SplitMix64 callerRng = new SplitMix64(0);
+    private final int chunk;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile long epoch = 0;
+    private volatile boolean closed = false;
+    private volatile Thread caller;
+    private int[] actions;
+    private ByteBuffer out;
+
+    /**
+     * @param games
+     * @param mode
+     * @param seed game i draws its pieces like PieceGenerator.bag(seedOf(seed, i))
+     * @param threads threads stepping the games, the calling thread included
+     */
+    public BatchEnv(int games, ActionMode mode, long seed, int threads) {
+        this.n = games;
+        this.mode = mode;
+        seeds = new long[n];
+        masks = new int[n * ROWS];
+        piece = new byte[n];
+        next = new byte[n];
+        rot = new byte[n];
+        row = new int[n];
+        col = new int[n];
+        score = new int[n];
+        lines = new int[n];
+        done = new byte[n];
+        rng = new long[n];
+        bag = new byte[n * BAG];
+        bagPos = new byte[n];
+        for (int i = 0; i < n; i++) {
+            seeds[i] = seedOf(seed, i);
+            rng[i] = seeds[i];
+            bagPos[i] = BAG;
+            reset(i, callerRng);
+        }
+
+        int parts = Math.max(1, Math.min(threads, n));
+        chunk = (n + parts - 1) / parts;
+        workers = new Worker[parts - 1];
+        for (int w = 0; w < workers.length; w++) {
+            workers[w] = new Worker((w + 1) * chunk, Math.min(n, (w + 2) * chunk));
+            workers[w].start();
+        }
+    }
+
+    /**
+     * Seed of game i in a batch created with the given seed
+     * @param seed
+     * @param i
+     * @return
+     */
+    public static long seedOf(long seed, int i) {
+        return SplitMix64.mix(seed + i);
+    }
+
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Buffer big enough for one observation of every game
+     * @return
+     */
+    public ByteBuffer allocateObservations() {
+        return ByteBuffer.allocateDirect(n * OBS_BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Writes the current observation of every game without stepping, reward 0
+     * @param out at least size() * OBS_BYTES bytes, records start at index 0
+     */
+    public void observe(ByteBuffer out) {
+        for (int i = 0; i < n; i++) write(i, 0, out);
+    }
+
+    /**
+     * Applies one action per game and writes the observations
+     * @param actions one per game
+     * @param out at least size() * OBS_BYTES bytes, records start at index 0
+     */
+    public void step(int[] actions, ByteBuffer out) {
+        if (actions.length < n || out.capacity() < n * OBS_BYTES)
+            throw new IllegalArgumentException("Need " + n + " actions and " + n * OBS_BYTES + " bytes");
+        this.actions = actions;
+        this.out = out;
+        caller = Thread.currentThread();
+        pending.set(workers.length);
+        epoch++;
+        for (Worker w : workers) LockSupport.unpark(w);
+        stepRange(0, Math.min(n, chunk), callerRng);
+        while (pending.get() != 0) LockSupport.park(this);
+    }
+
+    private void stepRange(int from, int to, SplitMix64 scratch) {
+        int[] acts = actions;
+        ByteBuffer buf = out;
+        for (int i = from; i < to; i++) {
+            int before = score[i];
+            if (done[i] != RUNNING) {
+                reset(i, scratch);
+                before = 0;
+            } else if (mode == ActionMode.PLACEMENT) {
+                place(i, acts[i], scratch);
+            } else {
+                key(i, acts[i], scratch);
+            }
+            write(i, score[i] - before, buf);
+        }
+    }
+
+    private void write(int i, int reward, ByteBuffer buf) {
+        int o = i * OBS_BYTES;
+        for (int r = 0, base = i * ROWS; r < ROWS; r++) buf.putInt(o + r * 4, masks[base + r]);
+        buf.put(o + OBS_PIECE, piece[i]);
+        buf.put(o + OBS_NEXT, next[i]);
+        buf.put(o + OBS_ROT, rot[i]);
+        buf.put(o + OBS_COL, (byte) col[i]);
+        buf.putShort(o + OBS_ROW, (short) row[i]);
+        buf.put(o + OBS_DONE, done[i]);
+        buf.putFloat(o + OBS_REWARD, reward);
+        buf.putInt(o + OBS_SCORE, score[i]);
+        buf.putInt(o + OBS_LINES, lines[i]);
+    }
+
+    /**
+     * Starts a new game in a slot, the piece sequence carries on
+     * @param i
+     * @param scratch
+     */
+    private void reset(int i, SplitMix64 scratch) {
+        for (int r = 0, base = i * ROWS; r < ROWS; r++) masks[base + r] = 0;
+        score[i] = 0;
+        lines[i] = 0;
+        done[i] = RUNNING;
+        piece[i] = draw(i, scratch);
+        next[i] = draw(i, scratch);
+        spawn(i);
+    }
+
+    /**
+     * Next piece of a slot's 7-bag, the same sequence as PieceGenerator.bag()
+     * @param i
+     * @param scratch
+     * @return
+     */
+    private byte draw(int i, SplitMix64 scratch) {
+        int b = i * BAG;
+        if (bagPos[i] == BAG) {
+            scratch.setState(rng[i]);
+            for (int k = 0; k < BAG; k++) bag[b + k] = (byte) k;
+            for (int k = BAG - 1; k > 0; k--) {
+                int j = scratch.nextInt(k + 1);
+                byte tmp = bag[b + k];
+                bag[b + k] = bag[b + j];
+                bag[b + j] = tmp;
+            }
+            rng[i] = scratch.getState();
+            bagPos[i] = 0;
+        }
+        return bag[b + bagPos[i]++];
+    }
+
+    private void spawn(int i) {
+        rot[i] = 0;
+        row[i] = 0;
+        col[i] = Tetrominoes.spawnColumn(piece[i]);
+        if (collides(i, rot[i], row[i], col[i])) done[i] = LOST;
+    }
+
+    private boolean collides(int i, int r, int atRow, int atCol) {
+        BaseTetromino t = Tetrominoes.get(piece[i]);
+        int[] m = t.getRowMasks(r);
+        if (atCol < 0 || atCol + t.getWidth(r) > COLUMNS || atRow + m.length > ROWS) return true;
+        int base = i * ROWS;
+        for (int k = 0; k < m.length; k++) {
+            int br = atRow + k;
+            if (br >= 0 && (masks[base + br] & (m[k] << atCol)) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drops the piece in the requested rotation and column, the column is clamped into the well.
+     * A piece that doesn't fit at the top there ends the game.
+     * @param i
+     * @param action
+     * @param scratch
+     */
+    private void place(int i, int action, SplitMix64 scratch) {
+        int r = Math.floorMod(action / COLUMNS, 4);
+        int width = Tetrominoes.get(piece[i]).getWidth(r);
+        int c = Math.max(0, Math.min(COLUMNS - width, action % COLUMNS));
+        if (collides(i, r, 0, c)) {
+            done[i] = LOST;
+            return;
+        }
+        int dr = 0;
+        while (!collides(i, r, dr + 1, c)) dr++;
+        rot[i] = (byte) r;
+        row[i] = dr;
+        col[i] = c;
+        lock(i, scratch);
+    }
+
+    /**
+     * One key press with GameState's movement rules
+     * @param i
+     * @param code
+     * @param scratch
+     */
+    private void key(int i, int code, SplitMix64 scratch) {
+        switch (code) {
+            case ReplayFormat.LEFT -> tryMove(i, row[i], col[i] - 1, rot[i], false, scratch);
+            case ReplayFormat.RIGHT -> tryMove(i, row[i], col[i] + 1, rot[i], false, scratch);
+            case ReplayFormat.SOFT_DROP, ReplayFormat.GRAVITY -> tryMove(i, row[i] + 1, col[i], rot[i], true, scratch);
+            case ReplayFormat.ROTATE -> {
+                int nr = (rot[i] + 1) % 4;
+                for (int kick : GameState.ROTATION_KICKS) {
+                    if (!collides(i, nr, row[i], col[i] + kick)) {
+                        col[i] += kick;
+                        rot[i] = (byte) nr;
+                        return;
+                    }
+                }
+            }
+            case ReplayFormat.HARD_DROP -> {
+                while (!collides(i, rot[i], row[i] + 1, col[i])) row[i]++;
+                lock(i, scratch);
+            }
+            default -> { }
+        }
+    }
+
+    private void tryMove(int i, int nr, int nc, int r, boolean lockIfBlocked, SplitMix64 scratch) {
+        if (!collides(i, r, nr, nc)) {
+            row[i] = nr;
+            col[i] = nc;
+            rot[i] = (byte) r;
+        } else if (lockIfBlocked && nr == row[i] + 1 && nc == col[i]) {
+            lock(i, scratch);
+        }
+    }
+
+    /**
+     * Locks the piece, clears lines, scores and spawns the next piece, in GameState.lockPiece() order
+     * @param i
+     * @param scratch
+     */
+    private void lock(int i, SplitMix64 scratch) {
+        int base = i * ROWS;
+        int[] m = Tetrominoes.get(piece[i]).getRowMasks(rot[i]);
+        boolean inside = true;
+        for (int k = 0; k < m.length; k++) {
+            int br = row[i] + k;
+            if (br < 0) {
+                inside = false;
+                continue;
+            }
+            masks[base + br] |= m[k] << col[i];
+        }
+        int cleared = clearRows(base);
+        lines[i] += cleared;
+        score[i] += GameState.lineScore(cleared);
+        if (lines[i] >= GameState.WIN_LINES) {
+            done[i] = WON;
+        } else if (!inside) {
+            done[i] = LOST;
+        } else {
+            piece[i] = next[i];
+            next[i] = draw(i, scratch);
+            spawn(i);
+        }
+    }
+
+    private int clearRows(int base) {
+        int full = (1 << COLUMNS) - 1;
+        int cleared = 0;
+        int write = base + ROWS - 1;
+        for (int read = write; read >= base; read--) {
+            int m = masks[read];
+            if (m == full) {
+                cleared++;
+                continue;
+            }
+            masks[write--] = m;
+        }
+        while (write >= base) masks[write--] = 0;
+        return cleared;
+    }
+
+    /**
+     * Stops the worker threads
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Worker w : workers) LockSupport.unpark(w);
+    }
+
+    private final class Worker extends Thread {
+        private final int from, to;
+        private final SplitMix64 scratch = new SplitMix64(0);
+
+        Worker(int from, int to) {
+            super("batch-env-" + from);
+            this.from = from;
+            this.to = to;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long seen = 0;
+            while (true) {
+                while (epoch == seen && !closed) LockSupport.park(this);
+                if (closed) return;
+                seen = epoch;
+                stepRange(from, to, scratch);
+                if (pending.decrementAndGet() == 0) LockSupport.unpark(caller);
+            }
+        }
+    }
+
+    /**
+     * Measures steps per second with random placements: BatchEnv [games] [seconds] [threads]
+     * @param args
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        try (BatchEnv env = new BatchEnv(games, ActionMode.PLACEMENT, 1, threads)) {
+            ByteBuffer obs = env.allocateObservations();
+            int[] actions = new int[games];
+            SplittableRandom random = new SplittableRandom(2);
+            long end = System.nanoTime() + seconds * 1_000_000_000L;
+            long reportAt = System.nanoTime() + 1_000_000_000L, steps = 0, finished = 0;
+            while (System.nanoTime() < end) {
+                for (int i = 0; i < games; i++) actions[i] = random.nextInt(PLACEMENT_ACTIONS);
+                env.step(actions, obs);
+                steps += games;
+                for (int i = 0; i < games; i++) if (obs.get(i * OBS_BYTES + OBS_DONE) != RUNNING) finished++;
+                if (System.nanoTime() >= reportAt) {
+                    System.out.printf("%d threads: %,d steps/s, %d games finished%n", threads, steps, finished);
+                    steps = 0;
+                    reportAt += 1_000_000_000L;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package scores;
+
+/**
+ * One finished game
+ * @param player
+ * @param score
+ * @param lines
+ * @param level
+ * @param durationMs time actually played, pauses excluded
+ * @param seed piece generator seed, matches the replay of the session
+ * @param finishedAt epoch millis
+ */
+public record ScoreRecord(String player, int score, int lines, int level, long durationMs, long seed, long finishedAt) {
+}
@@ -0,0 +1,318 @@
+package scores;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Embedded high-score table. Finished games are appended to a log file, each record framed by its
+ * length and a CRC32C so a torn write at the end is detected and dropped. On open the log is
+ * memory-mapped and scanned once to build the index: a sorted array of packed (score, record id)
+ * keys and every player's best, so top-N reads straight off the end of the array, ranks are a
+ * binary search and per-player bests a hash lookup. Records themselves stay in the mapping and
+ * are only decoded when a query returns them.
+ *
+ * Opening also compacts the log when it has a damaged tail or has grown well past maxRecords,
+ * keeping the best maxRecords games plus every player's best.
+ */
+public class ScoreStore implements AutoCloseable {
+    public static final Path DEFAULT_FILE = Path.of("data", "scores.log");
+    public static final int DEFAULT_MAX_RECORDS = 1_000_000;
+
+    private static final int MAGIC = 0x54534331;
+    private static final int HEADER_BYTES = 4;
+    private static final int MAX_NAME_BYTES = 64;
+    private static final int FIXED_PAYLOAD_BYTES = 2 + 4 + 4 + 4 + 8 + 8 + 8;
+    private static final int MAX_PAYLOAD_BYTES = FIXED_PAYLOAD_BYTES + MAX_NAME_BYTES;
+
+    private final Path file;
+    private final int maxRecords;
+    private final CRC32C crc = new CRC32C();
+
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private long size;
+
+    /** (score << 32 | MAX_VALUE - id) ascending, so the best score and earliest record is last */
+    private long[] keys = new long[1024];
+    private long[] offsets = new long[1024];
+    private int[] scores = new int[1024];
+    private int count = 0;
+    private final Map<String, Integer> best = new HashMap<>();
+
+    /**
+     * Opens or creates the log
+     * @param file
+     * @throws IOException if the file exists but is not a score log
+     */
+    public ScoreStore(Path file) throws IOException {
+        this(file, DEFAULT_MAX_RECORDS);
+    }
+
+    /**
+     * @param file
+     * @param maxRecords how many games compaction keeps besides each player's best
+     * @throws IOException if the file exists but is not a score log
+     */
+    public ScoreStore(Path file, int maxRecords) throws IOException {
+        this.file = file;
+        this.maxRecords = maxRecords;
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        open();
+        if (size < channel.size() || count > maxRecords + maxRecords / 4) {
+            compact();
+            open();
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).flip();
+            while (header.hasRemaining()) channel.write(header, header.position());
+        }
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (map.limit() < HEADER_BYTES || map.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("Not a score log: " + file);
+        }
+        count = 0;
+        best.clear();
+        size = scan();
+        sortKeys();
+    }
+
+    /**
+     * Keys were appended in id order so their low halves descend. A stable radix sort on the score
+     * half, 16 bits a pass, over the keys in reverse therefore leaves them fully sorted, in linear time.
+     */
+    private void sortKeys() {
+        long[] src = new long[count];
+        for (int i = 0; i < count; i++) src[i] = keys[count - 1 - i];
+        long[] dst = new long[count];
+        int[] starts = new int[(1 << 16) + 1];
+        for (int shift = 32; shift < 64; shift += 16) {
+            Arrays.fill(starts, 0);
+            for (int i = 0; i < count; i++) starts[(int) (src[i] >>> shift & 0xffff) + 1]++;
+            for (int b = 1; b < starts.length; b++) starts[b] += starts[b - 1];
+            for (int i = 0; i < count; i++) dst[starts[(int) (src[i] >>> shift & 0xffff)]++] = src[i];
+            long[] t = src;
+            src = dst;
+            dst = t;
+        }
+        System.arraycopy(src, 0, keys, 0, count);
+    }
+
+    /**
+     * Indexes every intact record
+     * @return offset just past the last intact record
+     */
+    private long scan() {
+        ByteBuffer view = map.duplicate();
+        int limit = map.limit();
+        int pos = HEADER_BYTES;
+        while (pos + 8 <= limit) {
+            int len = map.getInt(pos);
+            if (len < FIXED_PAYLOAD_BYTES || len > MAX_PAYLOAD_BYTES || pos + 8 + len > limit) break;
+            crc.reset();
+            view.limit(pos + 4 + len).position(pos + 4);
+            crc.update(view);
+            view.limit(limit);
+            if ((int) crc.getValue() != map.getInt(pos + 4 + len)) break;
+            int nameLen = map.getShort(pos + 4);
+            int score = map.getInt(pos + 6 + nameLen);
+            byte[] name = new byte[nameLen];
+            map.get(pos + 6, name);
+            index(new String(name, StandardCharsets.UTF_8), score, pos, false);
+            pos += 8 + len;
+        }
+        return pos;
+    }
+
+    /**
+     * Adds a record at a file offset to the index
+     * @param player
+     * @param score
+     * @param offset
+     * @param sorted insert in place rather than append for a later sort
+     */
+    private void index(String player, int score, long offset, boolean sorted) {
+        if (count == offsets.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2);
+            scores = Arrays.copyOf(scores, count * 2);
+        }
+        int id = count;
+        offsets[id] = offset;
+        scores[id] = score;
+        long key = (long) score << 32 | (Integer.MAX_VALUE - id);
+        if (sorted) {
+            int at = -Arrays.binarySearch(keys, 0, count, key) - 1;
+            System.arraycopy(keys, at, keys, at + 1, count - at);
+            keys[at] = key;
+        } else {
+            keys[id] = key;
+        }
+        count++;
+        Integer previous = best.get(player);
+        if (previous == null || scores[previous] < score) best.put(player, id);
+    }
+
+    /**
+     * Rewrites the log with the intact records worth keeping, in their original order
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        boolean[] keep = new boolean[count];
+        for (int i = count - 1, kept = 0; i >= 0 && kept < maxRecords; i--, kept++)
+            keep[Integer.MAX_VALUE - (int) keys[i]] = true;
+        for (int id : best.values()) keep[id] = true;
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+            buf.putInt(MAGIC);
+            for (int id = 0; id < count; id++) {
+                if (!keep[id]) continue;
+                int pos = (int) offsets[id];
+                int len = 8 + map.getInt(pos);
+                if (buf.remaining() < len) {
+                    buf.flip();
+                    while (buf.hasRemaining()) out.write(buf);
+                    buf.clear();
+                }
+                buf.put(buf.position(), map, pos, len);
+                buf.position(buf.position() + len);
+            }
+            buf.flip();
+            while (buf.hasRemaining()) out.write(buf);
+            out.force(true);
+        }
+        channel.close();
+        map = null;
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Appends a finished game and indexes it. A failed write is reported and the game is not kept.
+     * @param r
+     */
+    public synchronized void add(ScoreRecord r) {
+        byte[] name = r.player().getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES) name = Arrays.copyOf(name, MAX_NAME_BYTES);
+        String player = new String(name, StandardCharsets.UTF_8);
+        int len = FIXED_PAYLOAD_BYTES + name.length;
+        ByteBuffer buf = ByteBuffer.allocate(8 + len);
+        buf.putInt(len);
+        buf.putShort((short) name.length).put(name);
+        buf.putInt(r.score()).putInt(r.lines()).putInt(r.level());
+        buf.putLong(r.durationMs()).putLong(r.seed()).putLong(r.finishedAt());
+        crc.reset();
+        crc.update(buf.array(), 4, len);
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+        try {
+            long at = size;
+            while (buf.hasRemaining()) channel.write(buf, at + buf.position());
+            channel.force(false);
+            size += buf.limit();
+            index(player, r.score(), at, true);
+        } catch (IOException e) {
+            System.err.println("Couldn't save score for " + r.player());
+        }
+    }
+
+    /**
+     * Best games, highest first, earlier games first on a tie
+     * @param n
+     * @return
+     */
+    public synchronized List<ScoreRecord> top(int n) {
+        List<ScoreRecord> out = new ArrayList<>(Math.min(n, count));
+        for (int i = count - 1; i >= 0 && out.size() < n; i--)
+            out.add(read(Integer.MAX_VALUE - (int) keys[i]));
+        return out;
+    }
+
+    /**
+     * A player's best game
+     * @param player
+     * @return null if they never finished one
+     */
+    public synchronized ScoreRecord best(String player) {
+        Integer id = best.get(player);
+        return id == null ? null : read(id);
+    }
+
+    /**
+     * Place a score would take in the table, 1 for a new best
+     * @param score
+     * @return
+     */
+    public synchronized int rank(int score) {
+        int at = Arrays.binarySearch(keys, 0, count, (long) score << 32 | 0xffffffffL);
+        if (at < 0) at = -at - 1;
+        return count - at + 1;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Decodes a record from the mapping, remapping first if it was appended after the last map
+     * @param id
+     * @return
+     */
+    private ScoreRecord read(int id) {
+        int pos = (int) offsets[id];
+        if (pos + 8 > map.limit()) {
+            try {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException e) {
+                throw new IllegalStateException("Couldn't map " + file, e);
+            }
+        }
+        int nameLen = map.getShort(pos + 4);
+        byte[] name = new byte[nameLen];
+        map.get(pos + 6, name);
+        int p = pos + 6 + nameLen;
+        return new ScoreRecord(new String(name, StandardCharsets.UTF_8), map.getInt(p), map.getInt(p + 4),
+                map.getInt(p + 8), map.getLong(p + 12), map.getLong(p + 20), map.getLong(p + 28));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Prints the table: ScoreStore [file] [n]
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = args.length > 0 ? Path.of(args[0]) : DEFAULT_FILE;
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        try (ScoreStore store = new ScoreStore(file)) {
+            int place = 1;
+            for (ScoreRecord r : store.top(n))
+                System.out.printf("%3d. %-20s %8d  lines %3d  level %2d  %ds%n",
+                        place++, r.player(), r.score(), r.lines(), r.level(), r.durationMs() / 1000);
+        }
+    }
+}
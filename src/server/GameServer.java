@@ -0,0 +1,102 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless server hosting many independent games, one per TCP connection. Every connection gets
+ * a virtual thread, every game's gravity goes through one shared scheduler, so a session costs a
+ * GameState, a small buffer and a parked virtual thread.
+ */
+public class GameServer {
+    public static final int DEFAULT_PORT = 7531;
+    private static final int BACKLOG = 1024;
+    private static final long REPORT_MS = 5000;
+
+    private final int port;
+    private final ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+    private final GravityScheduler gravity = new GravityScheduler(virtualThreads);
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final LongAdder drops = new LongAdder();
+    private ServerSocket serverSocket;
+
+    public GameServer(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Binds and accepts connections on the calling thread until the socket is closed
+     * @throws IOException if the port can't be bound
+     */
+    public void serve() throws IOException {
+        serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        gravity.start();
+        startReporter();
+        System.out.println("Game server listening on " + serverSocket.getLocalSocketAddress());
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) break;
+                System.err.println("Accept failed: " + e.getMessage());
+                continue;
+            }
+            sessions.incrementAndGet();
+            virtualThreads.execute(new Session(socket, this));
+        }
+    }
+
+    public void stop() throws IOException {
+        if (serverSocket != null) serverSocket.close();
+    }
+
+    GravityScheduler gravity() {
+        return gravity;
+    }
+
+    void countDrop() {
+        drops.increment();
+    }
+
+    void sessionClosed() {
+        sessions.decrementAndGet();
+    }
+
+    public int getSessionCount() {
+        return sessions.get();
+    }
+
+    private void startReporter() {
+        Thread t = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(REPORT_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Runtime rt = Runtime.getRuntime();
+                System.out.printf("sessions %d, gravity drops %.0f/s, heap used %d MB%n", sessions.get(),
+                        drops.sumThenReset() * 1000.0 / REPORT_MS, (rt.totalMemory() - rt.freeMemory()) >> 20);
+            }
+        }, "server-report");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * GameServer [port]
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        new GameServer(port).serve();
+    }
+}
@@ -0,0 +1,50 @@
+package server;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * One timer thread for the gravity of every session. Sessions wait in a DelayQueue ordered by
+ * their next drop, so a tick only touches the sessions that are due. The drop itself runs on a
+ * fresh virtual thread, which keeps the timer from ever blocking on a slow client's socket.
+ */
+class GravityScheduler implements Runnable {
+    private final DelayQueue<Session> queue = new DelayQueue<>();
+    private final ExecutorService workers;
+    private final Thread thread;
+
+    GravityScheduler(ExecutorService workers) {
+        this.workers = workers;
+        this.thread = new Thread(this, "gravity");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Queues a session's next drop, the session must not be queued already
+     * @param session
+     */
+    void schedule(Session session) {
+        queue.put(session);
+    }
+
+    void cancel(Session session) {
+        queue.remove(session);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Session due;
+            try {
+                due = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            workers.execute(due::gravity);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package server;
+
+import replay.ReplayFormat;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator for the game server. Opens many sessions, each on a virtual thread, sends random
+ * moves at a fixed rate, restarts games that end, and measures the round trip from sending an action to the STATE message
+ * that acknowledges it.
+ *
+ * LoadClient [sessions] [seconds] [actions per second per session] [port]
+ */
+public class LoadClient {
+    private static final int MAX_IN_FLIGHT = 256;
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder actions = new LongAdder();
+    private final LongAdder rttNanos = new LongAdder();
+    private final LongAdder rttCount = new LongAdder();
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws InterruptedException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 2;
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : GameServer.DEFAULT_PORT;
+        new LoadClient().run(sessions, seconds, rate, port);
+    }
+
+    void run(int sessions, int seconds, double rate, int port) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>(sessions);
+        ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < sessions; i++)
+            threads.add(Thread.ofVirtual().start(() -> session(port, rate, readers)));
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            Thread.sleep(1000);
+            long n = rttCount.sumThenReset();
+            System.out.printf("connected %d, failed %d, actions %d/s, messages %d/s, mean rtt %.2f ms%n",
+                    connected.get(), failed.get(), actions.sumThenReset(), messages.sumThenReset(),
+                    n == 0 ? 0.0 : rttNanos.sumThenReset() / 1e6 / n);
+        }
+        running = false;
+        for (Thread t : threads) t.join();
+        readers.shutdownNow();
+    }
+
+    private void session(int port, double rate, ExecutorService readers) {
+        long[] sentAt = new long[MAX_IN_FLIGHT];
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out.write(ByteBuffer.allocate(Protocol.HANDSHAKE_BYTES).putInt(Protocol.MAGIC).putLong(0).array());
+            if (in.readInt() != Protocol.MAGIC) throw new IOException("bad welcome");
+            in.skipNBytes(Protocol.WELCOME_BYTES - 4);
+            connected.incrementAndGet();
+
+            RemoteBoard board = new RemoteBoard();
+            readers.execute(() -> read(in, board, sentAt));
+            long interval = (long) (1_000_000_000L / rate);
+            long next = System.nanoTime() + ThreadLocalRandom.current().nextLong(interval);
+            int sent = 0;
+            while (running) {
+                LockSupport.parkNanos(next - System.nanoTime());
+                next += interval;
+                sentAt[sent & (MAX_IN_FLIGHT - 1)] = System.nanoTime();
+                out.write(board.isGameOver() ? ReplayFormat.RESET : randomAction());
+                sent++;
+                actions.increment();
+            }
+            out.write(Protocol.QUIT);
+        } catch (IOException e) {
+            failed.incrementAndGet();
+        }
+    }
+
+    private void read(DataInputStream in, RemoteBoard board, long[] sentAt) {
+        int lastAck = 0;
+        try {
+            while (in.readByte() == Protocol.STATE) {
+                board.read(in);
+                messages.increment();
+                long now = System.nanoTime();
+                while (lastAck != board.ack) {
+                    rttNanos.add(now - sentAt[lastAck & (MAX_IN_FLIGHT - 1)]);
+                    rttCount.increment();
+                    lastAck = (lastAck + 1) & 0xffff;
+                }
+            }
+        } catch (IOException e) {
+            // session closed
+        }
+    }
+
+    /**
+     * Mostly moves and rotations, a hard drop now and then
+     * @return
+     */
+    private static int randomAction() {
+        int r = ThreadLocalRandom.current().nextInt(20);
+        if (r < 6) return ReplayFormat.LEFT;
+        if (r < 12) return ReplayFormat.RIGHT;
+        if (r < 16) return ReplayFormat.ROTATE;
+        if (r < 19) return ReplayFormat.SOFT_DROP;
+        return ReplayFormat.HARD_DROP;
+    }
+}
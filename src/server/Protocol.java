@@ -0,0 +1,71 @@
+package server;
+
+import model.Board;
+import model.DirtyRegion;
+import model.GameState;
+import model.Piece;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary protocol between the game server and its clients, all values big-endian.
+ *
+ * Handshake: the client sends MAGIC and a long seed (0 lets the server pick), the server answers
+ * MAGIC, VERSION, rows and columns.
+ *
+ * Client to server: one byte per action, using the replay event codes LEFT to RESET. QUIT closes the session.
+ *
+ * Server to client: a STATE message after every change, see encodeState(). Only the board rows
+ * that changed are sent, as one int occupancy mask each.
+ */
+public final class Protocol {
+    public static final int MAGIC = 0x54545356; // "TTSV"
+    public static final byte VERSION = 1;
+
+    public static final int QUIT = 0x7f;
+
+    public static final byte STATE = 1;
+
+    public static final int FLAG_PAUSED = 1;
+    public static final int FLAG_GAME_OVER = 2;
+    public static final int FLAG_WIN = 4;
+
+    public static final int HANDSHAKE_BYTES = 4 + 8;
+    public static final int WELCOME_BYTES = 4 + 1 + 1 + 1;
+    public static final int STATE_HEADER_BYTES = 1 + 2 + 1 + 4 + 2 + 1 + 4 + 1 + 2;
+    public static final int MAX_STATE_BYTES = STATE_HEADER_BYTES + GameState.ROWS * 4;
+
+    private Protocol() {}
+
+    /**
+     * STATE: type, ack (actions applied so far, mod 2^16), flags, score, lines, level, current
+     * piece type, rotation, row and column, next piece type, first changed row, row count, then
+     * one mask per row
+     * @param state
+     * @param dirty rows to send, drained from the state by the caller
+     * @param ack
+     * @param buf
+     */
+    public static void encodeState(GameState state, DirtyRegion dirty, int ack, ByteBuffer buf) {
+        int flags = (state.isPaused() ? FLAG_PAUSED : 0) | (state.isGameOver() ? FLAG_GAME_OVER : 0)
+                | (state.isWin() ? FLAG_WIN : 0);
+        Piece cur = state.getCurrent();
+        buf.put(STATE);
+        buf.putShort((short) ack);
+        buf.put((byte) flags);
+        buf.putInt(state.getScore());
+        buf.putShort((short) state.getLinesCleared());
+        buf.put((byte) state.getLevel());
+        buf.put((byte) cur.type.getIndex());
+        buf.put((byte) cur.rot);
+        buf.put((byte) cur.row);
+        buf.put((byte) cur.col);
+        buf.put((byte) state.getNext().type.getIndex());
+        int top = dirty.noRows() ? 0 : dirty.top;
+        int count = dirty.noRows() ? 0 : dirty.bottom - dirty.top + 1;
+        buf.put((byte) top);
+        buf.put((byte) count);
+        Board board = state.getPlayfield();
+        for (int r = top; r < top + count; r++) buf.putInt(board.mask(r));
+    }
+}
@@ -0,0 +1,45 @@
+package server;
+
+import model.GameState;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Client-side mirror of a game on the server, kept up to date from STATE messages
+ */
+public class RemoteBoard {
+    public final int[] masks = new int[GameState.ROWS];
+    public int ack;
+    public int flags;
+    public int score;
+    public int lines;
+    public int level;
+    public int pieceType, pieceRot, pieceRow, pieceCol;
+    public int nextType;
+
+    /**
+     * Reads the body of a STATE message, the type byte has already been read
+     * @param in
+     * @throws IOException
+     */
+    public void read(DataInputStream in) throws IOException {
+        ack = in.readUnsignedShort();
+        flags = in.readUnsignedByte();
+        score = in.readInt();
+        lines = in.readUnsignedShort();
+        level = in.readUnsignedByte();
+        pieceType = in.readUnsignedByte();
+        pieceRot = in.readUnsignedByte();
+        pieceRow = in.readByte();
+        pieceCol = in.readByte();
+        nextType = in.readUnsignedByte();
+        int top = in.readUnsignedByte();
+        int count = in.readUnsignedByte();
+        for (int r = top; r < top + count; r++) masks[r] = in.readInt();
+    }
+
+    public boolean isGameOver() {
+        return (flags & Protocol.FLAG_GAME_OVER) != 0;
+    }
+}
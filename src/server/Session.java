@@ -0,0 +1,157 @@
+package server;
+
+import model.DirtyRegion;
+import model.GameState;
+import model.PieceGenerator;
+import replay.ReplayFormat;
+import replay.ReplayPlayer;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One remote game. Runs on its own virtual thread reading actions from the socket, gravity
+ * arrives from the shared scheduler. The lock guards the game and the socket output, it is a
+ * ReentrantLock rather than synchronized so a virtual thread blocked on a write unmounts.
+ */
+class Session implements Runnable, Delayed {
+    private final Socket socket;
+    private final GameServer server;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final DirtyRegion dirty = new DirtyRegion();
+    private final ByteBuffer out = ByteBuffer.allocate(Protocol.MAX_STATE_BYTES);
+
+    private GameState state;
+    private OutputStream output;
+    private int ack = 0;
+    private boolean scheduled = false;
+    private boolean closed = false;
+    private long dueNanos;
+
+    Session(Socket socket, GameServer server) {
+        this.socket = socket;
+        this.server = server;
+    }
+
+    @Override
+    public void run() {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            InputStream input = socket.getInputStream();
+            output = socket.getOutputStream();
+            DataInputStream handshake = new DataInputStream(input);
+            if (handshake.readInt() != Protocol.MAGIC) return;
+            long seed = handshake.readLong();
+            if (seed == 0) seed = ThreadLocalRandom.current().nextLong();
+
+            lock.lock();
+            try {
+                state = new GameState(PieceGenerator.bag(seed));
+                ByteBuffer welcome = ByteBuffer.allocate(Protocol.WELCOME_BYTES);
+                welcome.putInt(Protocol.MAGIC).put(Protocol.VERSION)
+                        .put((byte) GameState.ROWS).put((byte) GameState.COLUMNS);
+                output.write(welcome.array());
+                send();
+                scheduleGravity();
+            } finally {
+                lock.unlock();
+            }
+
+            int action;
+            while ((action = input.read()) >= 0 && action != Protocol.QUIT) {
+                if (action > ReplayFormat.RESET) continue;
+                lock.lock();
+                try {
+                    ReplayPlayer.apply(state, action);
+                    ack++;
+                    send();
+                    if (action == ReplayFormat.RESET || action == ReplayFormat.PAUSE) scheduleGravity();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException e) {
+            // client went away, nothing to report
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * One gravity step, called on a worker thread when the drop is due
+     */
+    void gravity() {
+        lock.lock();
+        try {
+            scheduled = false;
+            if (closed) return;
+            state.stepGravity();
+            server.countDrop();
+            send();
+            scheduleGravity();
+        } catch (IOException e) {
+            closeQuietly();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the next drop unless one is queued or the game is paused or over. Lock must be held.
+     */
+    private void scheduleGravity() {
+        if (scheduled || closed || state.isPaused() || state.isGameOver()) return;
+        scheduled = true;
+        dueNanos = System.nanoTime() + state.getDropDelay() * 1_000_000L;
+        server.gravity().schedule(this);
+    }
+
+    /**
+     * Sends whatever changed since the last message. Lock must be held.
+     * @throws IOException
+     */
+    private void send() throws IOException {
+        state.drainDirty(dirty);
+        out.clear();
+        Protocol.encodeState(state, dirty, ack, out);
+        output.write(out.array(), 0, out.position());
+    }
+
+    private void close() {
+        lock.lock();
+        try {
+            closeQuietly();
+        } finally {
+            lock.unlock();
+        }
+        server.gravity().cancel(this);
+        server.sessionClosed();
+    }
+
+    private void closeQuietly() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed o) {
+        return Long.compare(dueNanos, ((Session) o).dueNanos);
+    }
+}
@@ -0,0 +1,353 @@
+package server;
+
+import ai.BestMoveSearch;
+import ai.Placement;
+import ai.SearchResult;
+import ai.TranspositionTable;
+import ai.WeightedHeuristic;
+import model.Board;
+import model.DirtyRegion;
+import model.GameState;
+import model.PieceGenerator;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams one live game to any number of spectators over the game server's STATE messages.
+ *
+ * Every change is encoded once, on the game thread, into its own slot of a direct ring buffer.
+ * The selector thread feeds each spectator socket with gathering writes of per-spectator views
+ * onto those slots, so nothing is encoded or copied per spectator. Every KEYFRAME_INTERVAL
+ * messages carry the whole board; a spectator that falls more than MAX_LAG messages behind
+ * skips to the latest keyframe instead of having the backlog queued for it. Spectators see the
+ * skip as a jump in the ack field, which here is the message sequence number.
+ */
+public class SpectatorBroadcast {
+    public static final int DEFAULT_PORT = 7533;
+    static final int KEYFRAME_INTERVAL = 64;
+    private static final int SLOTS = 1024;
+    private static final int SLOT_BYTES = Protocol.MAX_STATE_BYTES;
+    static final int MAX_LAG = SLOTS / 2;
+    private static final int GATHER = 16;
+    private static final int BACKLOG = 1024;
+    /** Kept small so a stalled spectator's backlog stays in the ring, where it can be skipped */
+    private static final int SEND_BUFFER = 4 * 1024;
+    private static final long REPORT_MS = 5000;
+
+    private final GameState state;
+    private final int port;
+    private final ByteBuffer ring = ByteBuffer.allocateDirect(SLOTS * SLOT_BYTES);
+    private final ByteBuffer encoder = ring.duplicate();
+    private final int[] lengths = new int[SLOTS];
+    private final int[] sentMasks = new int[GameState.ROWS];
+    private final DirtyRegion rows = new DirtyRegion();
+    private final ByteBuffer welcome = ByteBuffer.allocateDirect(Protocol.WELCOME_BYTES);
+    private final ByteBuffer discard = ByteBuffer.allocate(256);
+    private final List<Spectator> spectators = new ArrayList<>();
+
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder skips = new LongAdder();
+    private final LongAdder overruns = new LongAdder();
+
+    private volatile long published = 0;
+    private volatile long keyframe = -KEYFRAME_INTERVAL;
+    private long lastChange = -1;
+    private long fed = 0;
+
+    private Selector selector;
+    private ServerSocketChannel server;
+
+    /**
+     * @param state game to broadcast, publish() must be called with it locked
+     * @param port
+     */
+    public SpectatorBroadcast(GameState state, int port) {
+        this.state = state;
+        this.port = port;
+        welcome.putInt(Protocol.MAGIC).put(Protocol.VERSION)
+                .put((byte) GameState.ROWS).put((byte) GameState.COLUMNS).flip();
+    }
+
+    /**
+     * Binds the spectator port and starts the daemon thread "spectators" that serves it
+     * @throws IOException if the port can't be bound
+     */
+    public void start() throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        Thread t = new Thread(this::serve, "spectators");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void stop() throws IOException {
+        if (server != null) server.close();
+        if (selector != null) selector.wakeup();
+    }
+
+    /**
+     * Encodes the game as it is now, unless nothing changed since the last call. Call on the game
+     * thread with the state locked, after every change or once per tick.
+     */
+    public void publish() {
+        long change = state.getChangeCount();
+        if (change == lastChange) return;
+        lastChange = change;
+
+        long seq = published;
+        boolean key = seq - keyframe >= KEYFRAME_INTERVAL;
+        Board board = state.getPlayfield();
+        rows.top = key ? 0 : Integer.MAX_VALUE;
+        rows.bottom = key ? GameState.ROWS - 1 : -1;
+        for (int r = 0; r < GameState.ROWS; r++) {
+            int m = board.mask(r);
+            if (m == sentMasks[r]) continue;
+            sentMasks[r] = m;
+            rows.top = Math.min(rows.top, r);
+            rows.bottom = Math.max(rows.bottom, r);
+        }
+
+        int slot = (int) (seq & (SLOTS - 1));
+        int base = slot * SLOT_BYTES;
+        encoder.limit(base + SLOT_BYTES).position(base);
+        Protocol.encodeState(state, rows, (int) seq, encoder);
+        lengths[slot] = encoder.position() - base;
+        published = seq + 1;
+        if (key) keyframe = seq;
+        if (selector != null) selector.wakeup();
+    }
+
+    private void serve() {
+        startReporter();
+        System.out.println("Spectators can connect to " + server.socket().getLocalSocketAddress());
+        try {
+            while (server.isOpen()) {
+                selector.select();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    if (!k.isValid()) continue;
+                    if (k.isAcceptable()) accept();
+                    else ready(k);
+                }
+                long end = published;
+                if (end != fed) {
+                    fed = end;
+                    for (int i = spectators.size() - 1; i >= 0; i--) {
+                        Spectator s = spectators.get(i);
+                        if ((s.key.interestOps() & SelectionKey.OP_WRITE) == 0) feed(s);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (server.isOpen()) System.err.println("Spectator broadcast stopped: " + e.getMessage());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            ch.configureBlocking(false);
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ch.setOption(StandardSocketOptions.SO_SNDBUF, SEND_BUFFER);
+            Spectator s = new Spectator(ch);
+            s.key = ch.register(selector, SelectionKey.OP_READ, s);
+            s.next = Math.max(0, keyframe);
+            spectators.add(s);
+            feed(s);
+        }
+    }
+
+    /**
+     * A spectator's socket has room again, or has something to read, which can only be the end
+     * of the stream since spectators never send anything
+     * @param k
+     */
+    private void ready(SelectionKey k) {
+        Spectator s = (Spectator) k.attachment();
+        if (k.isReadable()) {
+            try {
+                discard.clear();
+                if (s.channel.read(discard) < 0) {
+                    drop(s);
+                    return;
+                }
+            } catch (IOException e) {
+                drop(s);
+                return;
+            }
+        }
+        if (k.isValid() && k.isWritable()) feed(s);
+    }
+
+    /**
+     * Writes as much of the backlog as the socket takes. Registers for OP_WRITE if it fills up.
+     * @param s
+     */
+    private void feed(Spectator s) {
+        try {
+            if (s.hello.hasRemaining()) {
+                s.channel.write(s.hello);
+                if (s.hello.hasRemaining()) {
+                    waitForRoom(s, true);
+                    return;
+                }
+            }
+            while (true) {
+                long lag = published - s.next;
+                if (s.offset != 0 && lag >= SLOTS) {
+                    // the rest of a half-sent message has been overwritten, there is no way back in
+                    overruns.increment();
+                    drop(s);
+                    return;
+                }
+                if (s.offset == 0 && lag > MAX_LAG) {
+                    s.next = keyframe;
+                    skips.increment();
+                }
+                long end = published;
+                int n = (int) Math.min(end - s.next, GATHER);
+                if (n == 0) {
+                    waitForRoom(s, false);
+                    return;
+                }
+                long first = s.next;
+                for (int i = 0; i < n; i++) {
+                    int slot = (int) ((first + i) & (SLOTS - 1));
+                    int base = slot * SLOT_BYTES;
+                    s.views[i].limit(base + lengths[slot]).position(i == 0 ? base + s.offset : base);
+                }
+                bytes.add(s.channel.write(s.views, 0, n));
+                if (published - first >= SLOTS) {
+                    // the game lapped the ring while these slots were being sent
+                    overruns.increment();
+                    drop(s);
+                    return;
+                }
+                for (int i = 0; i < n; i++) {
+                    ByteBuffer v = s.views[i];
+                    if (v.hasRemaining()) {
+                        int slot = (int) ((first + i) & (SLOTS - 1));
+                        s.offset = v.position() - slot * SLOT_BYTES;
+                        waitForRoom(s, true);
+                        return;
+                    }
+                    s.next++;
+                    s.offset = 0;
+                }
+            }
+        } catch (IOException e) {
+            drop(s);
+        }
+    }
+
+    private void waitForRoom(Spectator s, boolean blocked) {
+        s.key.interestOps(blocked ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void drop(Spectator s) {
+        spectators.remove(s);
+        s.key.cancel();
+        try {
+            s.channel.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    private void startReporter() {
+        Thread t = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(REPORT_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!server.isOpen()) return;
+                System.out.printf("spectators %d, messages %d, sent %d KB/s, skips %d, overruns %d%n",
+                        spectators.size(), published, bytes.sumThenReset() * 1000 / REPORT_MS / 1024,
+                        skips.sum(), overruns.sum());
+            }
+        }, "spectator-report");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public long getPublished() {
+        return published;
+    }
+
+    public long getSkips() {
+        return skips.sum();
+    }
+
+    /**
+     * One connected spectator, only touched by the selector thread
+     */
+    private final class Spectator {
+        final SocketChannel channel;
+        final ByteBuffer hello = welcome.duplicate();
+        final ByteBuffer[] views = new ByteBuffer[GATHER];
+        SelectionKey key;
+        long next;
+        int offset;
+
+        Spectator(SocketChannel channel) {
+            this.channel = channel;
+            for (int i = 0; i < GATHER; i++) views[i] = ring.asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Broadcasts a headless game played by the search, for trying out spectator clients:
+     * SpectatorBroadcast [port] [ms per action]
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        long actionMs = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        GameState state = new GameState(PieceGenerator.bag(ThreadLocalRandom.current().nextLong()));
+        SpectatorBroadcast broadcast = new SpectatorBroadcast(state, port);
+        broadcast.start();
+        // the bot searches again before every action, the table turns those into lookups
+        BestMoveSearch search = new BestMoveSearch(new WeightedHeuristic(), false, ForkJoinPool.commonPool(),
+                new TranspositionTable(1 << 16));
+        long nextGravity = System.nanoTime();
+        while (true) {
+            synchronized (state) {
+                if (state.isGameOver()) state.reset();
+                SearchResult best = search.find(state);
+                Placement target = best == null ? null : best.placement();
+                if (target == null || state.getCurrent().rot != target.rot()) state.rotateCW();
+                else if (state.getCurrent().col > target.col()) state.moveLeft();
+                else if (state.getCurrent().col < target.col()) state.moveRight();
+                else state.hardDrop();
+                if (System.nanoTime() - nextGravity >= 0) {
+                    state.stepGravity();
+                    nextGravity = System.nanoTime() + state.getDropDelay() * 1_000_000L;
+                }
+                broadcast.publish();
+            }
+            Thread.sleep(actionMs);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator for the spectator broadcast. Opens many spectator connections on virtual
+ * threads and follows the game with a RemoteBoard each. Every tenth spectator stalls for a while
+ * after each message to play a slow consumer, which the broadcast should skip forward rather
+ * than queue for.
+ *
+ * SpectatorClient [spectators] [seconds] [stall ms] [port]
+ */
+public class SpectatorClient {
+    private static final int SLOW_EVERY = 10;
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws InterruptedException {
+        int spectators = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        long stallMs = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : SpectatorBroadcast.DEFAULT_PORT;
+        new SpectatorClient().run(spectators, seconds, stallMs, port);
+    }
+
+    void run(int spectators, int seconds, long stallMs, int port) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>(spectators);
+        for (int i = 0; i < spectators; i++) {
+            long stall = i % SLOW_EVERY == SLOW_EVERY - 1 ? stallMs : 0;
+            threads.add(Thread.ofVirtual().start(() -> watch(port, stall)));
+        }
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            Thread.sleep(1000);
+            System.out.printf("connected %d, failed %d, messages %d/s, skipped %d%n",
+                    connected.get(), failed.get(), messages.sumThenReset(), skipped.sum());
+        }
+        running = false;
+        for (Thread t : threads) t.join();
+    }
+
+    private void watch(int port, long stallMs) {
+        try (Socket socket = new Socket()) {
+            if (stallMs > 0) socket.setReceiveBufferSize(4096);
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (in.readInt() != Protocol.MAGIC) throw new IOException("bad welcome");
+            in.skipNBytes(Protocol.WELCOME_BYTES - 4);
+            connected.incrementAndGet();
+            RemoteBoard board = new RemoteBoard();
+            int expected = -1;
+            while (running) {
+                if (in.readByte() != Protocol.STATE) throw new IOException("unexpected message");
+                board.read(in);
+                if (expected >= 0 && board.ack != expected) skipped.increment();
+                expected = (board.ack + 1) & 0xffff;
+                messages.increment();
+                if (stallMs > 0) Thread.sleep(stallMs);
+            }
+        } catch (IOException e) {
+            if (running) failed.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
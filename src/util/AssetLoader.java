@@ -0,0 +1,82 @@
+package util;
+
+import javax.sound.sampled.*;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks assets on a small pool of daemon threads so startup never waits for them. Every load
+ * returns a future, a missing or broken asset completes with null rather than exceptionally.
+ */
+public class AssetLoader {
+    private static final int MAX_THREADS = 3;
+
+    private final ExecutorService executor;
+
+    public AssetLoader() {
+        AtomicInteger n = new AtomicInteger();
+        int threads = Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "asset-loader-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Finds a music track on the classpath and checks that it decodes, without reading the samples
+     * @param classpath
+     * @return the track's URL, or null if it can't be played
+     */
+    public CompletableFuture<URL> locateTrack(String classpath) {
+        return CompletableFuture.supplyAsync(() -> probeTrack(classpath), executor);
+    }
+
+    /**
+     * Lets the loader threads finish once queued loads are done
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static URL probeTrack(String classpath) {
+        URL url = AssetLoader.class.getClassLoader().getResource(classpath);
+        if(url == null) {
+            System.err.println("Couldn't find resource " + classpath);
+            return null;
+        }
+        try {
+            openPcm(url).close();
+            return url;
+        } catch (UnsupportedAudioFileException | IOException e) {
+            System.err.println("Couldn't load track " + classpath);
+            return null;
+        }
+    }
+
+    /**
+     *  Opens an audio resource as a stream decoded to 16 bit signed little-endian PCM
+     * @param url
+     * @return
+     * @throws UnsupportedAudioFileException
+     * @throws IOException
+     */
+    static AudioInputStream openPcm(URL url) throws UnsupportedAudioFileException, IOException {
+        AudioInputStream in = AudioSystem.getAudioInputStream(url);
+        AudioFormat base = in.getFormat();
+
+        AudioFormat decoded = new AudioFormat(
+                AudioFormat.Encoding.PCM_SIGNED,
+                base.getSampleRate(), 16,
+                base.getChannels(), base.getChannels() * 2,
+                base.getSampleRate(), false
+        );
+        return AudioSystem.isConversionSupported(decoded,base)
+                ? AudioSystem.getAudioInputStream(decoded,in) :
+                in;
+    }
+}
@@ -1,131 +1,137 @@
 package util;
 
-import javax.sound.sampled.*;
-import java.io.IOException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * Handles background music and sound effects for the Tetris game
+ * Handles background music and sound effects for the Tetris game. Music is streamed, tracks are
+ * located in the background and calls made before a track is ready are remembered so the music
+ * joins in when it arrives. Short effects go through a separate software mixer.
  */
 public class AudioManager {
-    private Clip gameplayClip;
-    private Clip winClip;
-    private Clip loseClip;
+    private URL gameplayTrack;
+    private URL winTrack;
+    private URL loseTrack;
 
-    private int gameplayFramePos = 0;
+    private boolean gameplayWanted = false;
+    private boolean gameplayPaused = false;
 
+    private final CompletableFuture<Void> ready;
+    private final MusicPlayer music = new MusicPlayer();
+    private final SfxMixer effects = new SfxMixer();
+
+    /**
+     * Loads the tracks on a loader of its own
+     */
     public AudioManager() {
-        gameplayClip = loadClip("audio/gameplay.wav");
-        winClip = loadClip("audio/win.wav");
-        loseClip = loadClip("audio/lose.wav");
+        this(new AssetLoader());
+    }
 
-        if (gameplayClip != null) {
-            gameplayClip.loop(0);
-        }
+    /**
+     * Starts locating the tracks and returns straight away
+     * @param loader
+     */
+    public AudioManager(AssetLoader loader) {
+        ready = CompletableFuture.allOf(
+                loader.locateTrack("audio/gameplay.wav").thenAccept(this::gameplayLoaded),
+                loader.locateTrack("audio/win.wav").thenAccept(t -> setTracks(null, t, null)),
+                loader.locateTrack("audio/lose.wav").thenAccept(t -> setTracks(null, null, t)));
+        effects.start();
     }
 
     /**
-     *  Loads a clip from a classpath resource
-     * @param classpath
+     * Completes once every track has been found or failed to
      * @return
      */
-    private Clip loadClip(String classpath) {
-        try {
-            URL url = getClass().getClassLoader().getResource(classpath);
-            if(url == null) {
-                System.err.println("Couldn't find resource " + classpath);
-                return null;
-            }
-            AudioInputStream in = AudioSystem.getAudioInputStream(url);
-            AudioFormat base = in.getFormat();
-
-            AudioFormat decoded = new AudioFormat(
-                    AudioFormat.Encoding.PCM_SIGNED,
-                    base.getSampleRate(), 16,
-                    base.getChannels(), base.getChannels() * 2,
-                    base.getSampleRate(), false
-            );
-            AudioInputStream din = AudioSystem.isConversionSupported(decoded,base)
-                    ? AudioSystem.getAudioInputStream(decoded,in) :
-                    in;
-
-            DataLine.Info info = new DataLine.Info(Clip.class, decoded);
-            Clip clip = (Clip) AudioSystem.getLine(info);
-            clip.open(din);
-            return clip;
-        } catch (UnsupportedAudioFileException | LineUnavailableException | IOException e) {
-            System.err.println("Couldn't load clip " + classpath);
-            return null;
-        }
+    public CompletableFuture<Void> ready() {
+        return ready;
+    }
+
+    /**
+     * Plays a sound effect through the mixer, lock-free so the game tick can call it
+     * @param effect
+     */
+    public void playEffect(SoundEffect effect) {
+        effects.play(effect);
+    }
+
+    private synchronized void setTracks(URL gameplay, URL win, URL lose) {
+        if (gameplay != null) gameplayTrack = gameplay;
+        if (win != null) winTrack = win;
+        if (lose != null) loseTrack = lose;
+    }
+
+    /**
+     * Music arrived, start it if the game wants it playing
+     * @param track
+     */
+    private synchronized void gameplayLoaded(URL track) {
+        setTracks(track, null, null);
+        if (track != null && gameplayWanted) music.play(track, true);
     }
 
     /**
      * Start or restart the continuous gameplay music loop
      */
-    public void startGameplayLoop() {
-        if (gameplayClip == null) return;
+    public synchronized void startGameplayLoop() {
         stopGameplay();
-        gameplayClip.setFramePosition(0);
-        gameplayClip.loop(Clip.LOOP_CONTINUOUSLY);
-        gameplayClip.start();
-        gameplayFramePos = 0;
+        gameplayWanted = true;
+        if (gameplayTrack == null) return;
+        music.play(gameplayTrack, true);
     }
 
     /**
      * pauses game
      */
-    public void pauseGameplay() {
-        if (gameplayClip == null) return;
-        gameplayFramePos = gameplayClip.getFramePosition();
-        gameplayClip.stop();
+    public synchronized void pauseGameplay() {
+        gameplayWanted = false;
+        gameplayPaused = true;
+        music.pause();
     }
 
     /**
-     * resumes game
+     * resumes game, from the same spot in the track
      */
-    public void resumeGameplay() {
-        if (gameplayClip == null) return;
-        gameplayClip.setFramePosition(gameplayFramePos);
-        gameplayClip.loop(Clip.LOOP_CONTINUOUSLY);
-        gameplayClip.start();
+    public synchronized void resumeGameplay() {
+        gameplayWanted = true;
+        if (gameplayTrack == null) return;
+        if (gameplayPaused && music.hasTrack()) music.resume();
+        else music.play(gameplayTrack, true);
+        gameplayPaused = false;
     }
 
     /**
      * stops game
      */
-    public void stopGameplay() {
-        if (gameplayClip == null) return;
-        gameplayClip.stop();
-        gameplayClip.flush();
+    public synchronized void stopGameplay() {
+        gameplayWanted = false;
+        gameplayPaused = false;
+        music.stop();
     }
 
     /**
      * plays win music if you win
      */
-    public void playWin(){
+    public synchronized void playWin(){
         stopGameplay();
-        playOnce(winClip);
+        playOnce(winTrack);
         }
 
     /**
      * plays lose music if you lose
      */
-    public void playLose(){
+    public synchronized void playLose(){
         stopGameplay();
-        playOnce(loseClip);
+        playOnce(loseTrack);
         }
 
     /**
-     * plays the main music from the beginiing
-     * @param clip
+     * plays a track from the beginiing
+     * @param track
      */
-    private void playOnce(Clip clip) {
-        if(clip == null) return;
-        clip.stop();
-        clip.setFramePosition(0);
-        clip.start();
+    private void playOnce(URL track) {
+        if(track == null) return;
+        music.play(track, false);
         }
 
 }
-
-
@@ -0,0 +1,231 @@
+package util;
+
+import javax.sound.sampled.*;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams one music track at a time. A dedicated thread decodes the track a chunk at a time into
+ * a small ring buffer and feeds it to a SourceDataLine, so memory stays flat however long the
+ * track is. Looping reopens the stream behind the data still queued in the line, with no gap.
+ * Pausing stops the line and keeps the stream where it is, resuming carries on from the same frame.
+ */
+public class MusicPlayer implements Runnable {
+    private static final int RING_BYTES = 32 * 1024;
+    private static final int LINE_MILLIS = 100;
+    private static final long IDLE_NANOS = 5_000_000L;
+
+    private final byte[] ring = new byte[RING_BYTES];
+    private int ringStart = 0;
+    private int ringSize = 0;
+
+    /* requested by the game, guarded by this */
+    private URL requested;
+    private boolean requestLoop;
+    private boolean restart = false;
+    private boolean paused = false;
+    private boolean stopped = true;
+
+    /* owned by the music thread */
+    private URL track;
+    private boolean loop;
+    private AudioInputStream stream;
+    private SourceDataLine line;
+    private AudioFormat lineFormat;
+    private boolean ended = true;
+
+    private final Thread thread;
+
+    public MusicPlayer() {
+        thread = new Thread(this, "music");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Plays a track from the beginning, replacing whatever is playing
+     * @param track
+     * @param loop
+     */
+    public synchronized void play(URL track, boolean loop) {
+        requested = track;
+        requestLoop = loop;
+        restart = true;
+        paused = false;
+        stopped = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stops the line and keeps the position
+     */
+    public synchronized void pause() {
+        paused = true;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Carries on from where pause() stopped
+     */
+    public synchronized void resume() {
+        paused = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stops and forgets the track
+     */
+    public synchronized void stop() {
+        stopped = true;
+        restart = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * True if a track is loaded, playing or paused
+     * @return
+     */
+    public synchronized boolean hasTrack() {
+        return !stopped;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            boolean doRestart, doPause, doStop;
+            URL next;
+            boolean nextLoop;
+            synchronized (this) {
+                doRestart = restart;
+                restart = false;
+                next = requested;
+                nextLoop = requestLoop;
+                doPause = paused;
+                doStop = stopped;
+            }
+            if (doRestart) open(next, nextLoop);
+            if (doStop || doPause || line == null) {
+                if (line != null) line.stop();
+                if (doStop) reset();
+                LockSupport.park(this);
+                continue;
+            }
+            if (!line.isRunning()) line.start();
+            fill();
+            int wrote = drainToLine();
+            if (ended && ringSize == 0) {
+                line.drain();
+                synchronized (this) {
+                    if (!restart) stopped = true;
+                }
+            } else if (wrote == 0) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Starts decoding a track, reusing the line when the format matches
+     * @param url
+     * @param loop
+     */
+    private void open(URL url, boolean loop) {
+        reset();
+        this.track = url;
+        this.loop = loop;
+        stream = openStream(url);
+        if (stream == null) return;
+        ended = false;
+        AudioFormat format = stream.getFormat();
+        if (line != null && format.matches(lineFormat)) return;
+        if (line != null) line.close();
+        line = null;
+        try {
+            SourceDataLine l = AudioSystem.getSourceDataLine(format);
+            int frames = (int) (format.getFrameRate() * LINE_MILLIS / 1000);
+            l.open(format, frames * format.getFrameSize());
+            line = l;
+            lineFormat = format;
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.err.println("Couldn't open music line for " + url);
+            closeStream();
+            ended = true;
+        }
+    }
+
+    private static AudioInputStream openStream(URL url) {
+        try {
+            return AssetLoader.openPcm(url);
+        } catch (UnsupportedAudioFileException | IOException e) {
+            System.err.println("Couldn't stream " + url);
+            return null;
+        }
+    }
+
+    /**
+     * Drops the stream and anything queued
+     */
+    private void reset() {
+        closeStream();
+        ended = true;
+        ringStart = 0;
+        ringSize = 0;
+        if (line != null) {
+            line.stop();
+            line.flush();
+        }
+    }
+
+    /**
+     * Decodes into the free part of the ring, reopening the track at the end when looping
+     */
+    private void fill() {
+        while (ringSize < RING_BYTES && !ended) {
+            int write = (ringStart + ringSize) % RING_BYTES;
+            int len = Math.min(RING_BYTES - ringSize, RING_BYTES - write);
+            int n;
+            try {
+                n = stream.read(ring, write, len);
+            } catch (IOException e) {
+                System.err.println("Couldn't read music " + track);
+                n = -1;
+                loop = false;
+            }
+            if (n > 0) {
+                ringSize += n;
+            } else if (n < 0) {
+                closeStream();
+                if (loop) stream = openStream(track);
+                if (stream == null) ended = true;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes as much of the ring as the line takes without blocking
+     * @return bytes written
+     */
+    private int drainToLine() {
+        int frame = lineFormat.getFrameSize();
+        int n = Math.min(Math.min(line.available(), ringSize), RING_BYTES - ringStart);
+        n -= n % frame;
+        if (n == 0) return 0;
+        int wrote = line.write(ring, ringStart, n);
+        ringStart = (ringStart + wrote) % RING_BYTES;
+        ringSize -= wrote;
+        return wrote;
+    }
+
+    private void closeStream() {
+        if (stream == null) return;
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // nothing left to read from it anyway
+        }
+        stream = null;
+    }
+}
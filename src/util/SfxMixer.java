@@ -0,0 +1,178 @@
+package util;
+
+import javax.sound.sampled.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Software mixer for sound effects. A dedicated thread mixes pre-decoded 16 bit mono PCM held in
+ * short arrays into one SourceDataLine with a buffer of a few milliseconds, so an effect starts
+ * within one chunk of being triggered and overlapping effects never cut each other off.
+ *
+ * play() only increments a per-effect atomic counter, it never locks or allocates and can be
+ * called from any thread.
+ */
+public class SfxMixer implements Runnable {
+    private static final float SAMPLE_RATE = 44100f;
+    private static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+    private static final int CHUNK_FRAMES = 256;
+    private static final int LINE_CHUNKS = 2;
+    private static final int VOICES = 16;
+
+    private static final SoundEffect[] EFFECTS = SoundEffect.values();
+
+    private final AtomicIntegerArray triggers = new AtomicIntegerArray(EFFECTS.length);
+    private final short[][] samples = new short[EFFECTS.length][];
+
+    private final int[] voiceEffect = new int[VOICES];
+    private final int[] voicePos = new int[VOICES];
+    private final int[] mix = new int[CHUNK_FRAMES];
+    private final byte[] out = new byte[CHUNK_FRAMES * 2];
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * Starts the mixer thread, which prepares the samples and opens the line itself
+     */
+    public void start() {
+        running = true;
+        thread = new Thread(this, "sfx-mixer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Queues an effect to start with the next mixed chunk
+     * @param effect
+     */
+    public void play(SoundEffect effect) {
+        triggers.getAndIncrement(effect.ordinal());
+    }
+
+    @Override
+    public void run() {
+        for (SoundEffect e : EFFECTS) samples[e.ordinal()] = load(e);
+        Arrays.fill(voiceEffect, -1);
+
+        SourceDataLine line;
+        try {
+            line = AudioSystem.getSourceDataLine(FORMAT);
+            line.open(FORMAT, out.length * LINE_CHUNKS);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.err.println("Couldn't open sound effect line, effects disabled");
+            return;
+        }
+        for (int i = 0; i < EFFECTS.length; i++) triggers.set(i, 0);
+        line.start();
+        while (running) {
+            startTriggered();
+            mixChunk();
+            line.write(out, 0, out.length);
+        }
+        line.stop();
+        line.close();
+    }
+
+    /**
+     * Turns pending triggers into voices, stealing the voice closest to finishing when all are busy
+     */
+    private void startTriggered() {
+        for (int e = 0; e < EFFECTS.length; e++) {
+            if (triggers.get(e) == 0) continue;
+            int n = Math.min(triggers.getAndSet(e, 0), VOICES);
+            for (int k = 0; k < n; k++) {
+                int v = freeVoice();
+                voiceEffect[v] = e;
+                voicePos[v] = 0;
+            }
+        }
+    }
+
+    private int freeVoice() {
+        int best = 0;
+        int bestLeft = Integer.MAX_VALUE;
+        for (int v = 0; v < VOICES; v++) {
+            if (voiceEffect[v] < 0) return v;
+            int left = samples[voiceEffect[v]].length - voicePos[v];
+            if (left < bestLeft) {
+                bestLeft = left;
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    private void mixChunk() {
+        Arrays.fill(mix, 0);
+        for (int v = 0; v < VOICES; v++) {
+            int e = voiceEffect[v];
+            if (e < 0) continue;
+            short[] s = samples[e];
+            int pos = voicePos[v];
+            int n = Math.min(CHUNK_FRAMES, s.length - pos);
+            for (int i = 0; i < n; i++) mix[i] += s[pos + i];
+            pos += n;
+            if (pos >= s.length) voiceEffect[v] = -1;
+            voicePos[v] = pos;
+        }
+        for (int i = 0, b = 0; i < CHUNK_FRAMES; i++) {
+            int m = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+            out[b++] = (byte) m;
+            out[b++] = (byte) (m >> 8);
+        }
+    }
+
+    /**
+     * Recorded effect converted to the mixer format, or a synthesised one
+     * @param effect
+     * @return
+     */
+    private static short[] load(SoundEffect effect) {
+        URL url = SfxMixer.class.getClassLoader().getResource(effect.resource());
+        if (url != null) {
+            try (AudioInputStream in = AudioSystem.getAudioInputStream(FORMAT, AudioSystem.getAudioInputStream(url))) {
+                return toShorts(in);
+            } catch (UnsupportedAudioFileException | IOException | IllegalArgumentException e) {
+                System.err.println("Couldn't load " + effect.resource() + ", using a synthesised one");
+            }
+        }
+        return synthesise(effect);
+    }
+
+    private static short[] toShorts(InputStream in) throws IOException {
+        byte[] bytes = in.readAllBytes();
+        short[] s = new short[bytes.length / 2];
+        for (int i = 0; i < s.length; i++)
+            s[i] = (short) ((bytes[2 * i] & 0xff) | (bytes[2 * i + 1] << 8));
+        return s;
+    }
+
+    /**
+     * Sine sweep from startHz to endHz with a short attack and a linear decay
+     * @param effect
+     * @return
+     */
+    private static short[] synthesise(SoundEffect effect) {
+        int n = (int) (SAMPLE_RATE * effect.millis / 1000);
+        int attack = (int) (SAMPLE_RATE * 0.002);
+        short[] s = new short[n];
+        double phase = 0;
+        for (int i = 0; i < n; i++) {
+            double t = (double) i / n;
+            double hz = effect.startHz + (effect.endHz - effect.startHz) * t;
+            phase += 2 * Math.PI * hz / SAMPLE_RATE;
+            double env = Math.min(1.0, (double) i / attack) * (1 - t);
+            s[i] = (short) (Math.sin(phase) * env * effect.volume * Short.MAX_VALUE);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,33 @@
+package util;
+
+/**
+ * Short game sounds. Each is loaded from audio/sfx/&lt;name&gt;.wav when the resource exists, otherwise
+ * a simple tone is synthesised from the parameters below so the game always has feedback.
+ */
+public enum SoundEffect {
+    MOVE(30, 0.25, 520, 520),
+    ROTATE(45, 0.25, 660, 880),
+    LOCK(70, 0.45, 140, 90),
+    LINE_CLEAR(180, 0.4, 500, 1000),
+    TETRIS(420, 0.45, 400, 1600);
+
+    final int millis;
+    final double volume;
+    final double startHz;
+    final double endHz;
+
+    SoundEffect(int millis, double volume, double startHz, double endHz) {
+        this.millis = millis;
+        this.volume = volume;
+        this.startHz = startHz;
+        this.endHz = endHz;
+    }
+
+    /**
+     * Classpath of the optional recorded version
+     * @return
+     */
+    String resource() {
+        return "audio/sfx/" + name().toLowerCase() + ".wav";
+    }
+}
@@ -0,0 +1,153 @@
+package versus;
+
+import ai.BestMoveSearch;
+import ai.Placement;
+import ai.SearchResult;
+import ai.WeightedHeuristic;
+import model.GameState;
+import model.Piece;
+import replay.ReplayFormat;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Headless versus player for local testing. Picks a placement with the search for every new
+ * piece and plays it as rotations, shifts and a hard drop, one action every actionMs.
+ */
+public class VersusBot implements VersusClient.Listener, Runnable {
+    private final String name;
+    private final long actionMs;
+    private final VersusClient client;
+    private final BestMoveSearch search = new BestMoveSearch(new WeightedHeuristic(), false);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile VersusMatch match;
+    private volatile int winner = -1;
+
+    public VersusBot(String name, int port, long actionMs) {
+        this.name = name;
+        this.actionMs = actionMs;
+        this.client = new VersusClient(port, this);
+    }
+
+    @Override
+    public void started(VersusMatch match, int you) {
+        this.match = match;
+        Thread t = new Thread(this, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public void updated() {
+    }
+
+    @Override
+    public void ended(int winner) {
+        this.winner = winner;
+        done.countDown();
+    }
+
+    /**
+     * Plans each new piece on the replica and sends the moves
+     */
+    @Override
+    public void run() {
+        long planned = -1;
+        while (done.getCount() > 0) {
+            Placement target = null;
+            int rot = 0, col = 0;
+            synchronized (match) {
+                GameState g = client.ownGame();
+                if (g.isGameOver()) return;
+                if (g.getPieceCount() != planned) {
+                    planned = g.getPieceCount();
+                    SearchResult best = search.find(g);
+                    if (best != null) {
+                        Piece cur = g.getCurrent();
+                        target = best.placement();
+                        rot = cur.rot;
+                        col = cur.col;
+                    }
+                }
+            }
+            if (target == null) {
+                pause(actionMs);
+                continue;
+            }
+            for (int r = rot; r != target.rot(); r = (r + 1) % 4) act(ReplayFormat.ROTATE);
+            for (int c = col; c > target.col(); c--) act(ReplayFormat.LEFT);
+            for (int c = col; c < target.col(); c++) act(ReplayFormat.RIGHT);
+            act(ReplayFormat.HARD_DROP);
+        }
+    }
+
+    private void act(int code) {
+        client.send(code);
+        pause(actionMs);
+    }
+
+    private static void pause(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Connects and waits for the match to end
+     * @return winner as reported by the server
+     * @throws InterruptedException
+     */
+    public int play() throws InterruptedException {
+        client.start();
+        done.await();
+        return winner;
+    }
+
+    public VersusClient getClient() {
+        return client;
+    }
+
+    /**
+     * Runs a server and a number of bots in one JVM: VersusBot [bots] [actionMs] [port]
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int bots = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        long actionMs = args.length > 1 ? Long.parseLong(args[1]) : 40;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : VersusServer.DEFAULT_PORT;
+        Thread server = new Thread(() -> {
+            try {
+                int w = new VersusServer(port, bots).run();
+                System.out.println(w < 0 ? "No winner" : "Server: player " + w + " wins");
+            } catch (java.io.IOException e) {
+                System.err.println("Versus server failed: " + e.getMessage());
+            }
+        }, "versus-server");
+        server.start();
+        Thread.sleep(200);
+        VersusBot[] all = new VersusBot[bots];
+        for (int i = 0; i < bots; i++) all[i] = new VersusBot("bot-" + i, port, actionMs);
+        Thread[] players = new Thread[bots];
+        for (int i = 0; i < bots; i++) {
+            VersusBot b = all[i];
+            players[i] = new Thread(() -> {
+                try {
+                    b.play();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            players[i].start();
+        }
+        for (Thread t : players) t.join();
+        server.join();
+        for (VersusBot b : all) {
+            VersusClient c = b.getClient();
+            System.out.printf("%s: %d events, %d delta rows, %d mismatched%n",
+                    b.name, c.getEvents(), c.getDeltaRows(), c.getMismatchedRows());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package versus;
+
+import model.Board;
+import model.GameState;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Network side of a versus client. A non-blocking selector thread sends queued actions and
+ * replays the server's event stream on a local VersusMatch. Deltas from the server are compared
+ * with the replicas and any row that disagrees is overwritten and counted.
+ *
+ * The match object is the lock for the replicas, hold it while reading them from another thread.
+ */
+public class VersusClient implements Runnable {
+
+    /**
+     * Called on the client thread
+     */
+    public interface Listener {
+        void started(VersusMatch match, int you);
+
+        void updated();
+
+        void ended(int winner);
+    }
+
+    private static final int IN_BYTES = 256 * 1024;
+
+    private final int port;
+    private final Listener listener;
+    private final ArrayBlockingQueue<Integer> actions = new ArrayBlockingQueue<>(256);
+    private final ByteBuffer in = ByteBuffer.allocate(IN_BYTES);
+    private final ByteBuffer out = ByteBuffer.allocate(1024);
+
+    private Selector selector;
+    private volatile VersusMatch match;
+    private int you = -1;
+    private long events = 0;
+    private long deltaRows = 0;
+    private long mismatchedRows = 0;
+    private boolean ended = false;
+
+    public VersusClient(int port, Listener listener) {
+        this.port = port;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts the client thread
+     * @return the thread
+     */
+    public Thread start() {
+        Thread t = new Thread(this, "versus-client");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    /**
+     * Queues one action for the server, safe to call from any thread
+     * @param code replay event code
+     */
+    public void send(int code) {
+        if (actions.offer(code) && selector != null) selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try (SocketChannel ch = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+             Selector sel = Selector.open()) {
+            ch.socket().setTcpNoDelay(true);
+            ch.configureBlocking(false);
+            selector = sel;
+            SelectionKey key = ch.register(sel, SelectionKey.OP_READ);
+            out.putInt(VersusProtocol.MAGIC).put(VersusProtocol.VERSION);
+            while (!ended) {
+                Integer a;
+                while ((a = actions.poll()) != null && out.hasRemaining()) out.put((byte) (int) a);
+                out.flip();
+                ch.write(out);
+                key.interestOps(out.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                out.compact();
+
+                sel.select();
+                sel.selectedKeys().clear();
+                if (ch.read(in) < 0) break;
+                in.flip();
+                parse();
+                in.compact();
+            }
+        } catch (IOException e) {
+            System.err.println("Lost connection to versus server: " + e.getMessage());
+        }
+        if (!ended) listener.ended(-1);
+    }
+
+    private void parse() {
+        boolean changed = false;
+        int length;
+        while ((length = VersusProtocol.messageLength(in)) > 0) {
+            int start = in.position();
+            byte type = in.get();
+            switch (type) {
+                case VersusProtocol.START -> {
+                    you = in.get();
+                    long[] seeds = new long[in.get()];
+                    for (int i = 0; i < seeds.length; i++) seeds[i] = in.getLong();
+                    match = new VersusMatch(seeds);
+                    listener.started(match, you);
+                }
+                case VersusProtocol.EVENT -> {
+                    int player = in.get(), code = in.get(), arg = in.get() & 0xff;
+                    synchronized (match) {
+                        match.apply(player, code, arg);
+                    }
+                    events++;
+                    changed = true;
+                }
+                case VersusProtocol.DELTA -> {
+                    int player = in.get(), count = in.get();
+                    synchronized (match) {
+                        Board board = match.game(player).getPlayfield();
+                        for (int i = 0; i < count; i++) {
+                            int row = in.get(), mask = in.getInt();
+                            deltaRows++;
+                            if (board.mask(row) != mask) {
+                                mismatchedRows++;
+                                board.setRow(row, mask, Board.GARBAGE);
+                            }
+                        }
+                    }
+                }
+                case VersusProtocol.END -> {
+                    ended = true;
+                    listener.ended(in.get());
+                }
+            }
+            in.position(start + length);
+        }
+        if (changed) listener.updated();
+    }
+
+    /**
+     * Replica of the local player's game
+     * @return null before the match starts
+     */
+    public GameState ownGame() {
+        VersusMatch m = match;
+        return m == null ? null : m.game(you);
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public long getDeltaRows() {
+        return deltaRows;
+    }
+
+    /**
+     * Delta rows the replica disagreed with and had to take from the server
+     * @return
+     */
+    public long getMismatchedRows() {
+        return mismatchedRows;
+    }
+}
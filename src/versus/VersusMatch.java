@@ -0,0 +1,56 @@
+package versus;
+
+import model.GameState;
+import model.PieceGenerator;
+import replay.ReplayPlayer;
+
+/**
+ * Every player's game in a versus match. Server and clients apply the same event stream to their
+ * own VersusMatch, and since every game is a deterministic function of its seed and its events,
+ * they all stay identical.
+ */
+public class VersusMatch {
+    private final GameState[] games;
+
+    public VersusMatch(long[] seeds) {
+        games = new GameState[seeds.length];
+        for (int i = 0; i < seeds.length; i++) games[i] = new GameState(PieceGenerator.bag(seeds[i]));
+    }
+
+    /**
+     * Applies one event to one player's game
+     * @param player
+     * @param code replay event code or VersusProtocol.GARBAGE
+     * @param arg garbage rows and hole, unused otherwise
+     */
+    public void apply(int player, int code, int arg) {
+        GameState g = games[player];
+        if (code == VersusProtocol.GARBAGE) g.addGarbage(arg >>> 4, arg & 0xf);
+        else ReplayPlayer.apply(g, code);
+    }
+
+    public GameState game(int player) {
+        return games[player];
+    }
+
+    public int players() {
+        return games.length;
+    }
+
+    /**
+     * The match is decided once a player has won outright or at most one is still playing
+     * @return winner, -1 for none yet, or players() if everyone lost
+     */
+    public int winner() {
+        int alive = -1, aliveCount = 0;
+        for (int i = 0; i < games.length; i++) {
+            if (games[i].isWin()) return i;
+            if (!games[i].isGameOver()) {
+                alive = i;
+                aliveCount++;
+            }
+        }
+        if (aliveCount > 1 || (aliveCount == 1 && games.length == 1)) return -1;
+        return aliveCount == 1 ? alive : games.length;
+    }
+}
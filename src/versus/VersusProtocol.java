@@ -0,0 +1,62 @@
+package versus;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format of versus mode. The server sequences every player's inputs, gravity ticks and
+ * incoming garbage into one event stream and broadcasts it; clients replay the stream on a
+ * replica of every game, so only inputs cross the wire. Every DELTA_MS the server also sends the
+ * rows of each board that changed since its last delta as bitmasks, which clients check their
+ * replicas against and overwrite them with on a mismatch.
+ *
+ * Client to server: HELLO (MAGIC, VERSION), then one byte per action using the replay event codes.
+ *
+ * Server to client:
+ * START  you, players, one seed per player
+ * EVENT  player, code, arg (garbage: count in the high nibble, hole column in the low one)
+ * DELTA  player, row count, then row index and mask per row
+ * END    winner, or -1 for none
+ */
+public final class VersusProtocol {
+    public static final int MAGIC = 0x54545653; // "TTVS"
+    public static final byte VERSION = 1;
+    public static final int HELLO_BYTES = 5;
+
+    public static final byte START = 1;
+    public static final byte EVENT = 2;
+    public static final byte DELTA = 3;
+    public static final byte END = 4;
+
+    /** Event code for incoming garbage, after the replay codes */
+    public static final int GARBAGE = 8;
+
+    public static final int EVENT_BYTES = 4;
+    public static final int DELTA_ROW_BYTES = 5;
+
+    public static final long DELTA_MS = 250;
+
+    private VersusProtocol() {}
+
+    public static int garbageArg(int rows, int hole) {
+        return rows << 4 | hole;
+    }
+
+    /**
+     * Bytes of the complete message at the buffer's position, or -1 if not all of it has arrived
+     * @param buf
+     * @return
+     */
+    public static int messageLength(ByteBuffer buf) {
+        int p = buf.position();
+        int available = buf.remaining();
+        if (available < 1) return -1;
+        int length = switch (buf.get(p)) {
+            case START -> available < 3 ? -1 : 3 + 8 * buf.get(p + 2);
+            case EVENT -> EVENT_BYTES;
+            case DELTA -> available < 3 ? -1 : 3 + DELTA_ROW_BYTES * buf.get(p + 2);
+            case END -> 2;
+            default -> throw new IllegalStateException("Unknown versus message " + buf.get(p));
+        };
+        return length < 0 || length > available ? -1 : length;
+    }
+}
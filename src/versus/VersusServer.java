@@ -0,0 +1,304 @@
+package versus;
+
+import model.GameState;
+import replay.ReplayFormat;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Authoritative versus server on a single non-blocking selector thread. Waits for every player,
+ * then runs the match: inputs and gravity are applied to the server's own VersusMatch in the
+ * order they happen, line clears turn into garbage for the opponents, and every event is
+ * broadcast so the clients can replay it.
+ */
+public class VersusServer {
+    public static final int DEFAULT_PORT = 7532;
+    private static final int IN_BYTES = 256;
+    private static final int OUT_BYTES = 256 * 1024;
+
+    private static final class Player {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(IN_BYTES);
+        final ByteBuffer out = ByteBuffer.allocate(OUT_BYTES);
+        int id = -1;
+        boolean open = true;
+
+        Player(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final int port;
+    private final int playerCount;
+    private final Player[] players;
+    private final SplittableRandom holes = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+    private final ByteBuffer broadcast = ByteBuffer.allocate(OUT_BYTES);
+
+    private Selector selector;
+    private int joined = 0;
+    private VersusMatch match;
+    private long[] nextGravity;
+    private int[][] sentRows;
+    private long nextDelta;
+
+    public VersusServer(int port, int playerCount) {
+        this.port = port;
+        this.playerCount = playerCount;
+        this.players = new Player[playerCount];
+    }
+
+    /**
+     * Runs one match to the end on the calling thread
+     * @return the winner, or -1 if nobody won
+     * @throws IOException if the port can't be bound
+     */
+    public int run() throws IOException {
+        selector = Selector.open();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("Versus server waiting for " + playerCount + " players on " + server.getLocalAddress());
+
+            int winner = -1;
+            while (winner < 0) {
+                long wait = match == null ? 0 : Math.max(1, (nextDue() - System.nanoTime()) / 1_000_000);
+                selector.select(wait);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept(server);
+                    else if (key.isReadable()) read(key);
+                    if (key.isValid() && key.isWritable()) flush((Player) key.attachment());
+                }
+                if (match != null) {
+                    tick();
+                    winner = match.winner();
+                    if (winner >= 0) {
+                        broadcast.put(VersusProtocol.END).put((byte) (winner < playerCount ? winner : -1));
+                    }
+                }
+                flushAll();
+            }
+            selector.close();
+            for (Player p : players) finish(p);
+            return winner < playerCount ? winner : -1;
+        }
+    }
+
+    private void accept(ServerSocketChannel server) throws IOException {
+        SocketChannel ch = server.accept();
+        if (ch == null) return;
+        if (joined == playerCount) {
+            ch.close();
+            return;
+        }
+        ch.configureBlocking(false);
+        ch.socket().setTcpNoDelay(true);
+        ch.register(selector, SelectionKey.OP_READ, new Player(ch));
+    }
+
+    private void read(SelectionKey key) {
+        Player p = (Player) key.attachment();
+        int n;
+        try {
+            n = p.channel.read(p.in);
+        } catch (IOException e) {
+            n = -1;
+        }
+        if (n < 0) {
+            close(p);
+            return;
+        }
+        p.in.flip();
+        if (p.id < 0) {
+            if (p.in.remaining() < VersusProtocol.HELLO_BYTES) {
+                p.in.compact();
+                return;
+            }
+            if (p.in.getInt() != VersusProtocol.MAGIC || p.in.get() != VersusProtocol.VERSION) {
+                close(p);
+                return;
+            }
+            p.id = joined;
+            players[joined++] = p;
+            if (joined == playerCount) start();
+        }
+        while (p.in.hasRemaining()) {
+            int action = p.in.get();
+            if (match != null && action >= ReplayFormat.LEFT && action <= ReplayFormat.HARD_DROP
+                    && !match.game(p.id).isGameOver())
+                applyEvent(p.id, action, 0);
+        }
+        p.in.clear();
+    }
+
+    /**
+     * Everyone is here: deal seeds and start the clocks
+     */
+    private void start() {
+        long[] seeds = new long[playerCount];
+        for (int i = 0; i < playerCount; i++) seeds[i] = holes.nextLong();
+        match = new VersusMatch(seeds);
+        long now = System.nanoTime();
+        nextGravity = new long[playerCount];
+        sentRows = new int[playerCount][GameState.ROWS];
+        for (int i = 0; i < playerCount; i++) {
+            nextGravity[i] = now + match.game(i).getDropDelay() * 1_000_000L;
+            ByteBuffer out = players[i].out;
+            out.put(VersusProtocol.START).put((byte) i).put((byte) playerCount);
+            for (long seed : seeds) out.putLong(seed);
+        }
+        nextDelta = now + VersusProtocol.DELTA_MS * 1_000_000L;
+    }
+
+    /**
+     * Applies an event for one player, broadcasts it and deals out any garbage it earned
+     * @param player
+     * @param code
+     * @param arg
+     */
+    private void applyEvent(int player, int code, int arg) {
+        match.apply(player, code, arg);
+        putEvent(player, code, arg);
+        int garbage = match.game(player).drainGarbageOut();
+        if (garbage == 0) return;
+        for (int q = 0; q < playerCount; q++) {
+            if (q == player || match.game(q).isGameOver()) continue;
+            int garbageArg = VersusProtocol.garbageArg(garbage, holes.nextInt(GameState.COLUMNS));
+            match.apply(q, VersusProtocol.GARBAGE, garbageArg);
+            putEvent(q, VersusProtocol.GARBAGE, garbageArg);
+        }
+    }
+
+    private void putEvent(int player, int code, int arg) {
+        broadcast.put(VersusProtocol.EVENT).put((byte) player).put((byte) code).put((byte) arg);
+    }
+
+    /**
+     * Gravity for every player that is due, then the board deltas when they are due
+     */
+    private void tick() {
+        long now = System.nanoTime();
+        for (int i = 0; i < playerCount; i++) {
+            GameState g = match.game(i);
+            if (g.isGameOver() || now < nextGravity[i]) continue;
+            applyEvent(i, ReplayFormat.GRAVITY, 0);
+            nextGravity[i] = now + g.getDropDelay() * 1_000_000L;
+        }
+        if (now < nextDelta) return;
+        nextDelta = now + VersusProtocol.DELTA_MS * 1_000_000L;
+        for (int i = 0; i < playerCount; i++) putDelta(i);
+    }
+
+    /**
+     * Rows of a board that changed since its last delta, as masks
+     * @param player
+     */
+    private void putDelta(int player) {
+        int[] sent = sentRows[player];
+        var board = match.game(player).getPlayfield();
+        int count = 0;
+        for (int r = 0; r < GameState.ROWS; r++) if (board.mask(r) != sent[r]) count++;
+        if (count == 0) return;
+        broadcast.put(VersusProtocol.DELTA).put((byte) player).put((byte) count);
+        for (int r = 0; r < GameState.ROWS; r++) {
+            int m = board.mask(r);
+            if (m == sent[r]) continue;
+            broadcast.put((byte) r).putInt(m);
+            sent[r] = m;
+        }
+    }
+
+    private long nextDue() {
+        long due = nextDelta;
+        for (int i = 0; i < playerCount; i++)
+            if (!match.game(i).isGameOver()) due = Math.min(due, nextGravity[i]);
+        return due;
+    }
+
+    /**
+     * Copies this round's broadcast to every player and writes as much as each socket takes
+     */
+    private void flushAll() {
+        broadcast.flip();
+        for (Player p : players) {
+            if (p == null || !p.open) continue;
+            if (p.out.remaining() < broadcast.remaining()) {
+                System.err.println("Player " + p.id + " is too far behind, disconnecting");
+                close(p);
+                continue;
+            }
+            p.out.put(broadcast.duplicate());
+            flush(p);
+        }
+        broadcast.clear();
+    }
+
+    private void flush(Player p) {
+        if (!p.open) return;
+        p.out.flip();
+        try {
+            p.channel.write(p.out);
+        } catch (IOException e) {
+            p.out.clear();
+            close(p);
+            return;
+        }
+        boolean pending = p.out.hasRemaining();
+        p.out.compact();
+        SelectionKey key = p.channel.keyFor(selector);
+        if (key != null && key.isValid())
+            key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Blocking write of whatever the player hasn't received yet, then close
+     * @param p
+     */
+    private void finish(Player p) {
+        if (p == null || !p.open) return;
+        try {
+            p.channel.configureBlocking(true);
+            p.out.flip();
+            while (p.out.hasRemaining()) p.channel.write(p.out);
+        } catch (IOException e) {
+            // they won't see the result
+        }
+        close(p);
+    }
+
+    private void close(Player p) {
+        if (p == null || !p.open) return;
+        p.open = false;
+        try {
+            p.channel.close();
+        } catch (IOException e) {
+            // already gone
+        }
+    }
+
+    /**
+     * VersusServer [players] [port]
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        int winner = new VersusServer(port, count).run();
+        System.out.println(winner < 0 ? "No winner" : "Player " + winner + " wins");
+    }
+}
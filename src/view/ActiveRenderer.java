@@ -0,0 +1,127 @@
+package view;
+
+import model.DirtyRegion;
+import model.GameState;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferStrategy;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Renders the game panel straight into the frame's page-flipped BufferStrategy from the game
+ * loop thread. Frames where nothing changed are skipped entirely unless interpolation keeps
+ * the falling piece moving between rows.
+ */
+public class ActiveRenderer implements Runnable {
+    private static final int DEFAULT_REFRESH_RATE = 60;
+    private static final long REFRESH_NANOS = 500_000_000L;
+
+    private final JFrame frame;
+    private final TetrisPanel panel;
+    private final GameState state;
+    private final DoubleSupplier fall;
+    private final BufferStrategy strategy;
+    private final DirtyRegion dirty = new DirtyRegion();
+
+    private volatile boolean exposed = true;
+    private boolean interpolate = false;
+    private Runnable onFirstFrame;
+    private long lastFull = 0;
+
+    /**
+     * Must be called on the EDT after the frame is visible
+     * @param frame
+     * @param panel
+     * @param state
+     * @param fall fraction of the current gravity interval, for interpolation
+     */
+    public ActiveRenderer(JFrame frame, TetrisPanel panel, GameState state, DoubleSupplier fall) {
+        this.frame = frame;
+        this.panel = panel;
+        this.state = state;
+        this.fall = fall;
+        frame.setIgnoreRepaint(true);
+        panel.setIgnoreRepaint(true);
+        frame.createBufferStrategy(2);
+        this.strategy = frame.getBufferStrategy();
+
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowActivated(WindowEvent e) { exposed = true; }
+            @Override
+            public void windowDeiconified(WindowEvent e) { exposed = true; }
+        });
+        frame.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentShown(ComponentEvent e) { exposed = true; }
+            @Override
+            public void componentMoved(ComponentEvent e) { exposed = true; }
+        });
+    }
+
+    /**
+     * Draw the falling piece sliding between rows instead of stepping
+     * @param interpolate
+     */
+    public void setInterpolate(boolean interpolate) {
+        this.interpolate = interpolate;
+    }
+
+    /**
+     * Called on the game loop thread once the first frame is on screen
+     * @param onFirstFrame
+     */
+    public void setOnFirstFrame(Runnable onFirstFrame) {
+        this.onFirstFrame = onFirstFrame;
+    }
+
+    /**
+     * Refresh rate of the screen the frame is on
+     * @return
+     */
+    public int getRefreshRate() {
+        int rate = frame.getGraphicsConfiguration().getDevice().getDisplayMode().getRefreshRate();
+        return rate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_REFRESH_RATE : rate;
+    }
+
+    /**
+     * Renders one frame, called on the game loop thread with the state locked
+     */
+    @Override
+    public void run() {
+        state.drainDirty(dirty);
+        boolean moving = interpolate && !state.isPaused() && !state.isGameOver();
+        long now = System.nanoTime();
+        boolean stale = exposed || now - lastFull > REFRESH_NANOS;
+        if (dirty.isEmpty() && !moving && !stale) return;
+        exposed = false;
+        lastFull = now;
+
+        Point origin = SwingUtilities.convertPoint(panel, 0, 0, frame);
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    g.translate(origin.x, origin.y);
+                    g.clipRect(0, 0, panel.getWidth(), panel.getHeight());
+                    g.setColor(panel.getBackground());
+                    g.fillRect(0, 0, panel.getWidth(), panel.getHeight());
+                    panel.render(g, moving ? fall.getAsDouble() : 0);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+        if (onFirstFrame != null) {
+            onFirstFrame.run();
+            onFirstFrame = null;
+        }
+    }
+}
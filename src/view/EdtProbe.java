@@ -0,0 +1,39 @@
+package view;
+
+import metrics.Metrics;
+
+import java.awt.*;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Measures how long work waits in the EDT queue: posts a timestamped no-op every PERIOD_MS and
+ * records the delay until it runs into Metrics.EDT_LATENCY.
+ */
+class EdtProbe implements Runnable {
+    private static final long PERIOD_MS = 100;
+
+    private long posted;
+    private final Runnable probe = () -> Metrics.EDT_LATENCY.record(System.nanoTime() - posted);
+
+    static void start() {
+        Thread t = new Thread(new EdtProbe(), "edt-probe");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            posted = System.nanoTime();
+            try {
+                EventQueue.invokeAndWait(probe);
+                Thread.sleep(PERIOD_MS);
+            } catch (InterruptedException e) {
+                return;
+            } catch (InvocationTargetException e) {
+                System.err.println("EDT probe failed: " + e.getCause());
+                return;
+            }
+        }
+    }
+}
@@ -1,9 +1,23 @@
 package view;
 import controller.TetrisController;
+import metrics.Metrics;
 import model.GameState;
+import model.PieceGenerator;
+import model.UndoStack;
+import replay.ReplayRecorder;
+import scores.ScoreRecord;
+import scores.ScoreStore;
+import server.SpectatorBroadcast;
+import util.AssetLoader;
 import util.AudioManager;
 
 import javax.swing.*;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.time.format.DateTimeFormatter;
 
 
 /**
@@ -11,10 +25,25 @@ import javax.swing.*;
  * Creates the game state model, panel view, and controller
  */
 public class Main {
+    private static final String DEFAULT_PLAYER = "Jasmine";
+    private static final int PRACTICE_UNDO_DEPTH = 200;
+
+    /**
+     * @param args optional player name
+     */
     public static void main(String[] args) {
+        long startNanos = System.nanoTime();
+        String player = args.length > 0 ? args[0] : DEFAULT_PLAYER;
+        CompletableFuture<ScoreStore> scores = openScores();
+        AssetLoader assets = new AssetLoader();
+        AudioManager audio = new AudioManager(assets);
+        audio.ready().whenComplete((v, e) -> assets.shutdown());
+
         SwingUtilities.invokeLater(() -> {
-            GameState state = new GameState();
-            TetrisPanel panel = new TetrisPanel(state, "Jasmine");
+            GameState state = new GameState(PieceGenerator.unseeded());
+            boolean practice = Boolean.getBoolean("tetris.practice");
+            ReplayRecorder recorder = practice ? null : openRecorder(state);
+            TetrisPanel panel = new TetrisPanel(state, player);
 
             JFrame frame = new JFrame("Tetris");
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -24,11 +53,119 @@ public class Main {
             frame.setLocationRelativeTo(null);
             frame.setVisible(true);
 
-            AudioManager audio = new AudioManager();
-            new TetrisController(state, panel, audio);
+            TetrisController controller = new TetrisController(state, panel, audio, recorder);
+            ActiveRenderer renderer = new ActiveRenderer(frame, panel, state, controller::gravityFraction);
+            renderer.setInterpolate(Boolean.getBoolean("tetris.interpolate"));
+            if (practice) {
+                controller.setUndoStack(new UndoStack(state, PRACTICE_UNDO_DEPTH));
+            } else {
+                controller.setOnGameOver(playedMs -> {
+                    ScoreRecord record = new ScoreRecord(player, state.getScore(), state.getLinesCleared(),
+                            state.getLevel(), playedMs, state.getGenerator().getSeed(), System.currentTimeMillis());
+                    scores.thenAcceptAsync(store -> {
+                        if (store != null) store.add(record);
+                    });
+                });
+            }
+            Integer broadcastPort = Integer.getInteger("tetris.broadcast");
+            if (broadcastPort != null) startBroadcast(state, controller, broadcastPort);
+            if (Boolean.getBoolean("tetris.startup")) reportStartup(startNanos, renderer, audio);
+            controller.start(renderer, renderer.getRefreshRate());
+            if (Metrics.ENABLED) {
+                Metrics.start();
+                EdtProbe.start();
+            }
+            if (Boolean.getBoolean("tetris.latency")) {
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    synchronized (state) {
+                        System.out.print(controller.getLatency().report());
+                    }
+                }));
+            }
             panel.requestFocusInWindow();
         });
     }
+
+    /**
+     * Prints how long after main() and after JVM start the first frame and the audio were ready
+     * @param startNanos
+     * @param renderer
+     * @param audio
+     */
+    private static void reportStartup(long startNanos, ActiveRenderer renderer, AudioManager audio) {
+        long sinceMain = (System.nanoTime() - startNanos) / 1_000_000;
+        long jvmToMain = ManagementFactory.getRuntimeMXBean().getUptime() - sinceMain;
+        renderer.setOnFirstFrame(() -> {
+            long ms = (System.nanoTime() - startNanos) / 1_000_000;
+            System.out.printf("First frame %d ms after main, %d ms after JVM start%n", ms, jvmToMain + ms);
+        });
+        audio.ready().thenRun(() -> System.out.printf("Audio ready %d ms after main%n",
+                (System.nanoTime() - startNanos) / 1_000_000));
+    }
+
+    /**
+     * Lets spectators watch this game on the given port, the game still runs if it can't be bound
+     * @param state
+     * @param controller
+     * @param port
+     */
+    private static void startBroadcast(GameState state, TetrisController controller, int port) {
+        SpectatorBroadcast broadcast = new SpectatorBroadcast(state, port);
+        try {
+            broadcast.start();
+            controller.setOnChange(broadcast::publish);
+        } catch (IOException e) {
+            System.err.println("Couldn't start spectator broadcast: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens the high-score log in the background, the game still runs without it
+     * @return completes with null if the log can't be opened
+     */
+    private static CompletableFuture<ScoreStore> openScores() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                ScoreStore store = new ScoreStore(ScoreStore.DEFAULT_FILE);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        store.close();
+                    } catch (IOException e) {
+                        System.err.println("Couldn't close score log");
+                    }
+                }));
+                return store;
+            } catch (IOException e) {
+                System.err.println("Couldn't open score log: " + e.getMessage());
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Starts recording this session to replays/, the game still runs if the file can't be created
+     * @param state
+     * @return
+     */
+    private static ReplayRecorder openRecorder(GameState state) {
+        String name = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".tetr";
+        try {
+            ReplayRecorder recorder = new ReplayRecorder(Path.of("replays", name), state);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                synchronized (state) {
+                    try {
+                        recorder.close();
+                    } catch (IOException e) {
+                        System.err.println("Couldn't close replay " + name);
+                    }
+                }
+            }));
+            return recorder;
+        } catch (IOException e) {
+            System.err.println("Couldn't start replay " + name);
+            return null;
+        }
+    }
 }
 
 
@@ -0,0 +1,68 @@
+package view;
+
+import model.GameState;
+import model.Piece;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Small live view of an opponent's board in versus mode, drawn from the local replica of their game
+ */
+public class OpponentPanel extends JPanel {
+    private static final int TILE_SIZE = 16;
+    private static final int LABEL_HEIGHT = 20;
+    private static final Color BOARD_COLOR = new Color(20, 20, 20);
+
+    private final GameState state;
+    private final Object lock;
+    private final String label;
+    private final int rows;
+    private final int columns;
+
+    /**
+     * @param state replica of the opponent's game
+     * @param lock held while reading the replica
+     * @param label
+     */
+    public OpponentPanel(GameState state, Object lock, String label) {
+        this.state = state;
+        this.lock = lock;
+        this.label = label;
+        setBackground(Color.BLACK);
+        this.rows = state.getPlayfield().getRows();
+        this.columns = state.getPlayfield().getColumns();
+        setPreferredSize(new Dimension(columns * TILE_SIZE, LABEL_HEIGHT + rows * TILE_SIZE));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        synchronized (lock) {
+            g.setColor(Color.WHITE);
+            String status = state.isWin() ? " WIN" : state.isGameOver() ? " OUT" : "";
+            g.drawString(label + "  " + state.getLinesCleared() + status, 2, 14);
+
+            g.setColor(BOARD_COLOR);
+            g.fillRect(0, LABEL_HEIGHT, columns * TILE_SIZE, rows * TILE_SIZE);
+            for (int r = 0; r < rows; r++) {
+                int[] line = state.getRowColours(r);
+                for (int c = 0; c < columns; c++)
+                    if (line[c] >= 0) drawCell(g, r, c, line[c]);
+            }
+
+            Piece cur = state.getCurrent();
+            if (!state.isGameOver()) {
+                int[] rows = cur.type.getCellRows(cur.rot);
+                int[] cols = cur.type.getCellCols(cur.rot);
+                for (int i = 0; i < rows.length; i++)
+                    if (cur.row + rows[i] >= 0) drawCell(g, cur.row + rows[i], cur.col + cols[i], cur.type.getIndex());
+            }
+        }
+    }
+
+    private void drawCell(Graphics g, int row, int col, int idx) {
+        g.setColor(Palette.of(idx));
+        g.fillRect(col * TILE_SIZE, LABEL_HEIGHT + row * TILE_SIZE, TILE_SIZE - 1, TILE_SIZE - 1);
+    }
+}
@@ -0,0 +1,34 @@
+package view;
+
+import java.awt.Color;
+
+/**
+ * Maps model piece indices, and the garbage index after them, to the colours they are drawn in
+ */
+public final class Palette {
+    private static final Color[] COLORS = {
+            new Color(0, 240, 240),
+            new Color(0, 0, 255),
+            new Color(255, 165, 0),
+            new Color(255, 255, 0),
+            new Color(0, 255, 0),
+            new Color(160, 0, 240),
+            new Color(255, 0, 0),
+            new Color(110, 110, 110)
+    };
+
+    private Palette() {}
+
+    /**
+     * Colour for a piece index
+     * @param index
+     * @return
+     */
+    public static Color of(int index) {
+        return COLORS[index];
+    }
+
+    public static int size() {
+        return COLORS.length;
+    }
+}
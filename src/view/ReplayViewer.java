@@ -0,0 +1,52 @@
+package view;
+
+import model.DirtyRegion;
+import replay.ReplayPlayer;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Watches a recorded game.
+ * Usage: ReplayViewer file [speed] [startPiece]
+ */
+public class ReplayViewer {
+    private static final int FRAME_MS = 16;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: ReplayViewer file [speed] [startPiece]");
+            return;
+        }
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+        long startPiece = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+        ReplayPlayer player = new ReplayPlayer(Path.of(args[0]));
+        player.seekToPiece(startPiece);
+
+        SwingUtilities.invokeLater(() -> {
+            TetrisPanel panel = new TetrisPanel(player.getState(), "Replay");
+            JFrame frame = new JFrame("Tetris Replay");
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.setContentPane(panel);
+            frame.pack();
+            frame.setResizable(false);
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+
+            long startNanos = System.nanoTime();
+            long startMs = player.getTimeMs();
+            DirtyRegion dirty = new DirtyRegion();
+            Timer timer = new Timer(FRAME_MS, null);
+            timer.addActionListener(e -> {
+                long elapsed = (System.nanoTime() - startNanos) / 1_000_000;
+                player.advanceTo(startMs + (long) (elapsed * speed));
+                player.getState().drainDirty(dirty);
+                if (!dirty.isEmpty()) panel.repaint(dirty);
+                if (player.isFinished()) timer.stop();
+            });
+            timer.start();
+        });
+    }
+}
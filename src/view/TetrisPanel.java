@@ -1,10 +1,14 @@
 package view;
 
+import metrics.Metrics;
+import model.DirtyRegion;
 import model.GameState;
 import model.Piece;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
 /**
  * for rendering the entire Tetris game screen
@@ -14,8 +18,22 @@ public class TetrisPanel extends JPanel {
     private static final int TILE_SIZE = 60;
     private static final int INFO_HEIGHT = 70;
 
+    private static final Color BOARD_COLOR = new Color(20, 20, 20);
+    private static final Color GRID_COLOR = new Color(45, 45, 45);
+
     private final GameState state;
-    private final String playerName;
+    private final String playerLabel;
+
+    /**
+     * Pre-rendered background and grid lines of one board row, tiled down the visible rows, and one
+     * bevelled sprite per palette index. Built on first paint and dropped when the panel moves to
+     * another screen.
+     */
+    private Image rowLayer;
+    private final Image[] tileSprites = new Image[Palette.size()];
+
+    private int hudScore = -1, hudLines = -1, hudLevel = -1;
+    private String scoreLabel, linesLabel, levelLabel;
 
     /**
      * Construct a panel with a given game state and player name and sets background color and preferred size
@@ -24,14 +42,44 @@ public class TetrisPanel extends JPanel {
      */
     public TetrisPanel(GameState state, String playerName) {
         this.state = state;
-        this.playerName = playerName;
+        this.playerLabel = "Player: " + playerName;
         setBackground(Color.BLACK);
         setPreferredSize(new Dimension(
-                GameState.COLUMNS * TILE_SIZE,
-                INFO_HEIGHT + GameState.ROWS * TILE_SIZE
+                columns() * TILE_SIZE,
+                INFO_HEIGHT + rows() * TILE_SIZE
         ));
     }
 
+    private int rows() {
+        return state.getPlayfield().getRows();
+    }
+
+    private int columns() {
+        return state.getPlayfield().getColumns();
+    }
+
+    /**
+     * Repaints only the board rows and HUD strip that changed
+     * @param dirty
+     */
+    public void repaint(DirtyRegion dirty) {
+        if (dirty.hud)
+            repaint(0, 0, getWidth(), INFO_HEIGHT);
+        if (!dirty.noRows())
+            repaint(0, INFO_HEIGHT + dirty.top * TILE_SIZE,
+                    columns() * TILE_SIZE, (dirty.bottom - dirty.top + 1) * TILE_SIZE + 1);
+    }
+
+    /**
+     * Cached images are tied to the graphics configuration, rebuild them on the new one
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        rowLayer = null;
+        Arrays.fill(tileSprites, null);
+    }
+
 
     /**
      * draws the entire board
@@ -40,100 +88,180 @@ public class TetrisPanel extends JPanel {
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
+        render(g, 0);
+    }
 
+    /**
+     * Draws the game onto a graphics that already has the background filled. Used by
+     * paintComponent and by the active renderer.
+     * @param g
+     * @param fall how far to draw the falling piece towards the next row, 0 to 1
+     */
+    public void render(Graphics g, double fall) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
         if (g instanceof Graphics2D g2) {
             g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
                     RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
         }
 
-
+        updateHudLabels();
         g.setColor(Color.WHITE);
-        g.drawString("Player: " + playerName, 10, 18);
-        g.drawString("Score: " + state.getScore(), 160, 18);
-        g.drawString("Lines: " + state.getLinesCleared(), 260, 18);
-        g.drawString("Level: " + state.getLevel(), 350, 18);
+        g.drawString(playerLabel, 10, 18);
+        g.drawString(scoreLabel, 160, 18);
+        g.drawString(linesLabel, 260, 18);
+        g.drawString(levelLabel, 350, 18);
         if (state.isPaused()) g.drawString("[PAUSED]", 430, 18);
         if (state.isGameOver())
             g.drawString(state.isWin() ? "[YOU WIN]" : "[GAME OVER] Press R", 430, 18);
 
 
-        g.setColor(new Color(20, 20, 20));
-        g.fillRect(0, INFO_HEIGHT, GameState.COLUMNS * TILE_SIZE, GameState.ROWS * TILE_SIZE);
-
-
-        g.setColor(new Color(45, 45, 45));
-        for (int r = 0; r <= GameState.ROWS; r++)
-            g.drawLine(0, INFO_HEIGHT + r * TILE_SIZE,
-                    GameState.COLUMNS * TILE_SIZE, INFO_HEIGHT + r * TILE_SIZE);
-        for (int c = 0; c <= GameState.COLUMNS; c++)
-            g.drawLine(c * TILE_SIZE, INFO_HEIGHT,
-                    c * TILE_SIZE, INFO_HEIGHT + GameState.ROWS * TILE_SIZE);
+        Rectangle clip = g.getClipBounds();
+        int firstRow = 0, lastRow = rows() - 1;
+        if (clip != null) {
+            firstRow = Math.max(firstRow, (clip.y - INFO_HEIGHT) / TILE_SIZE);
+            lastRow = Math.min(lastRow, (clip.y + clip.height - INFO_HEIGHT) / TILE_SIZE);
+        }
 
+        if (rowLayer == null) rowLayer = renderRowLayer();
+        for (int r = firstRow; r <= lastRow; r++)
+            g.drawImage(rowLayer, 0, INFO_HEIGHT + r * TILE_SIZE, null);
 
-        int[][] board = state.getBoard();
-        var palette = state.getPalette();
-        for (int r = 0; r < GameState.ROWS; r++) {
-            for (int c = 0; c < GameState.COLUMNS; c++) {
-                int idx = board[r][c];
-                if (idx != -1) drawTile(g, c, r, palette[idx]);
+        for (int r = firstRow; r <= lastRow; r++) {
+            int[] line = state.getRowColours(r);
+            for (int c = 0; c < line.length; c++) {
+                int idx = line[c];
+                if (idx != -1) drawTile(g, c, r, idx);
             }
         }
 
 
         model.Piece cur = state.getCurrent();
         if (cur != null && !state.isGameOver()) {
-            int[][] s = cur.shape();
-            for (int r = 0; r < s.length; r++) {
-                for (int c = 0; c < s[0].length; c++) {
-                    if (s[r][c] == 0) continue;
-                    int br = cur.row + r, bc = cur.col + c;
-                    if (br >= 0) drawTile(g, bc, br, cur.type.getColor());
-                }
+            int[] rows = cur.type.getCellRows(cur.rot);
+            int[] cols = cur.type.getCellCols(cur.rot);
+            int idx = cur.type.getIndex();
+            int offset = fall > 0 && state.canFall() ? (int) (fall * TILE_SIZE) : 0;
+            for (int i = 0; i < rows.length; i++) {
+                int br = cur.row + rows[i], bc = cur.col + cols[i];
+                if (br >= 0) drawTileAt(g, bc * TILE_SIZE, INFO_HEIGHT + br * TILE_SIZE + offset, idx);
             }
         }
 
 
         drawNextPreview(g);
+        if (Metrics.ENABLED) Metrics.RENDER.record(System.nanoTime() - start);
     }
 
+    /**
+     * Rebuilds the HUD strings only when the values behind them change
+     */
+    private void updateHudLabels() {
+        if (state.getScore() != hudScore) {
+            hudScore = state.getScore();
+            scoreLabel = "Score: " + hudScore;
+        }
+        if (state.getLinesCleared() != hudLines) {
+            hudLines = state.getLinesCleared();
+            linesLabel = "Lines: " + hudLines;
+        }
+        if (state.getLevel() != hudLevel) {
+            hudLevel = state.getLevel();
+            levelLabel = "Level: " + hudLevel;
+        }
+    }
+
+
+    private void drawTile(Graphics g, int col, int row, int idx) {
+        drawTileAt(g, col * TILE_SIZE, INFO_HEIGHT + row * TILE_SIZE, idx);
+    }
+
+    private void drawTileAt(Graphics g, int x, int y, int idx) {
+        Image sprite = tileSprites[idx];
+        if (sprite == null) sprite = tileSprites[idx] = renderTile(Palette.of(idx));
+        g.drawImage(sprite, x, y, null);
+    }
+
+    /**
+     * Background and grid lines of one row, with the line below it, so a tall board only draws
+     * the rows in the clip
+     * @return
+     */
+    private Image renderRowLayer() {
+        int w = columns() * TILE_SIZE, h = TILE_SIZE + 1;
+        BufferedImage img = createImage(w, h, Transparency.OPAQUE);
+        Graphics g = img.getGraphics();
+        g.setColor(BOARD_COLOR);
+        g.fillRect(0, 0, w, h);
+
+        g.setColor(GRID_COLOR);
+        g.drawLine(0, 0, w, 0);
+        g.drawLine(0, TILE_SIZE, w, TILE_SIZE);
+        for (int c = 0; c <= columns(); c++)
+            g.drawLine(c * TILE_SIZE, 0, c * TILE_SIZE, TILE_SIZE);
+        g.dispose();
+        return img;
+    }
 
+    /**
+     * Bevelled tile of one colour. The sprite is opaque and carries the cell's own grid lines and
+     * background border, so blitting it gives the same pixels as drawing on top of the board.
+     * @param color
+     * @return
+     */
+    private Image renderTile(Color color) {
+        BufferedImage img = createImage(TILE_SIZE, TILE_SIZE, Transparency.OPAQUE);
+        Graphics g = img.getGraphics();
 
-    private void drawTile(Graphics g, int col, int row, Color color) {
-        int x = col * TILE_SIZE;
-        int y = INFO_HEIGHT + row * TILE_SIZE;
+        g.setColor(BOARD_COLOR);
+        g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+        g.setColor(GRID_COLOR);
+        g.drawLine(0, 0, TILE_SIZE - 1, 0);
+        g.drawLine(0, 0, 0, TILE_SIZE - 1);
 
         g.setColor(color);
-        g.fillRect(x + 1, y + 1, TILE_SIZE - 2, TILE_SIZE - 2);
+        g.fillRect(1, 1, TILE_SIZE - 2, TILE_SIZE - 2);
 
         g.setColor(color.brighter());
-        g.drawLine(x + 1, y + 1, x + TILE_SIZE - 2, y + 1);
-        g.drawLine(x + 1, y + 1, x + 1, y + TILE_SIZE - 2);
+        g.drawLine(1, 1, TILE_SIZE - 2, 1);
+        g.drawLine(1, 1, 1, TILE_SIZE - 2);
 
         g.setColor(color.darker());
-        g.drawLine(x + 1, y + TILE_SIZE - 2, x + TILE_SIZE - 2, y + TILE_SIZE - 2);
-        g.drawLine(x + TILE_SIZE - 2, y + 1, x + TILE_SIZE - 2, y + TILE_SIZE - 2);
+        g.drawLine(1, TILE_SIZE - 2, TILE_SIZE - 2, TILE_SIZE - 2);
+        g.drawLine(TILE_SIZE - 2, 1, TILE_SIZE - 2, TILE_SIZE - 2);
+        g.dispose();
+        return img;
+    }
+
+    /**
+     * Image in the screen's native format when there is a screen, so drawImage is a straight blit
+     * @param w
+     * @param h
+     * @param transparency
+     * @return
+     */
+    private BufferedImage createImage(int w, int h, int transparency) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc != null) return gc.createCompatibleImage(w, h, transparency);
+        return new BufferedImage(w, h, transparency == Transparency.OPAQUE
+                ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
     }
 
     private void drawNextPreview(Graphics g) {
         g.setColor(Color.WHITE);
-        g.drawString("Next:", GameState.COLUMNS * TILE_SIZE - 70, 18);
+        g.drawString("Next:", columns() * TILE_SIZE - 70, 18);
 
         Piece next = state.getNext();
         if (next == null) return;
 
-        int[][] s = next.shape();
-        int baseX = (GameState.COLUMNS * TILE_SIZE) - 70;
+        int[] rows = next.type.getCellRows(next.rot);
+        int[] cols = next.type.getCellCols(next.rot);
+        int baseX = (columns() * TILE_SIZE) - 70;
         int baseY = 28;
-        for (int r = 0; r < s.length; r++) {
-            for (int c = 0; c < s[0].length; c++) {
-                if (s[r][c] == 0) continue;
-                int x = baseX + c * (TILE_SIZE / 2);
-                int y = baseY + r * (TILE_SIZE / 2);
-                g.setColor(next.type.getColor());
-                g.fillRect(x, y, TILE_SIZE / 2 - 2, TILE_SIZE / 2 - 2);
-            }
+        g.setColor(Palette.of(next.type.getIndex()));
+        for (int i = 0; i < rows.length; i++) {
+            int x = baseX + cols[i] * (TILE_SIZE / 2);
+            int y = baseY + rows[i] * (TILE_SIZE / 2);
+            g.fillRect(x, y, TILE_SIZE / 2 - 2, TILE_SIZE / 2 - 2);
         }
     }
 }
-
-
@@ -0,0 +1,103 @@
+package view;
+
+import controller.InputAction;
+import replay.ReplayFormat;
+import versus.VersusClient;
+import versus.VersusMatch;
+import versus.VersusServer;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+
+/**
+ * Versus client window: the local game full size with every opponent's board beside it.
+ * Start the server first with versus.VersusServer.
+ */
+public class VersusMain implements VersusClient.Listener {
+    private final String player;
+    private VersusClient client;
+    private JFrame frame;
+
+    private VersusMain(String player) {
+        this.player = player;
+    }
+
+    /**
+     * VersusMain [player] [port]
+     * @param args
+     */
+    public static void main(String[] args) {
+        String player = args.length > 0 ? args[0] : "Jasmine";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : VersusServer.DEFAULT_PORT;
+        VersusMain main = new VersusMain(player);
+        main.client = new VersusClient(port, main);
+        main.client.start();
+        System.out.println("Waiting for the match to start...");
+    }
+
+    @Override
+    public void started(VersusMatch match, int you) {
+        SwingUtilities.invokeLater(() -> {
+            TetrisPanel own = new TetrisPanel(match.game(you), player) {
+                @Override
+                protected void paintComponent(Graphics g) {
+                    synchronized (match) {
+                        super.paintComponent(g);
+                    }
+                }
+            };
+            own.addKeyListener(new KeyAdapter() {
+                @Override
+                public void keyPressed(KeyEvent e) {
+                    InputAction action = InputAction.forKey(e.getKeyCode());
+                    if (action != null) send(action);
+                }
+            });
+            JPanel opponents = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 8));
+            opponents.setBackground(Color.BLACK);
+            for (int i = 0; i < match.players(); i++)
+                if (i != you) opponents.add(new OpponentPanel(match.game(i), match, "Player " + i));
+
+            frame = new JFrame("Tetris versus - player " + you);
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.getContentPane().add(own, BorderLayout.CENTER);
+            frame.getContentPane().add(opponents, BorderLayout.EAST);
+            frame.pack();
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+            own.setFocusable(true);
+            own.requestFocusInWindow();
+        });
+    }
+
+    /**
+     * Moves only, pause and reset don't exist in versus. Held keys repeat at the OS rate.
+     * @param action
+     */
+    private void send(InputAction action) {
+        switch (action) {
+            case LEFT -> client.send(ReplayFormat.LEFT);
+            case RIGHT -> client.send(ReplayFormat.RIGHT);
+            case SOFT_DROP -> client.send(ReplayFormat.SOFT_DROP);
+            case ROTATE -> client.send(ReplayFormat.ROTATE);
+            case HARD_DROP -> client.send(ReplayFormat.HARD_DROP);
+            default -> { }
+        }
+    }
+
+    @Override
+    public void updated() {
+        if (frame != null) frame.repaint();
+    }
+
+    @Override
+    public void ended(int winner) {
+        SwingUtilities.invokeLater(() -> {
+            String msg = winner < 0 ? "No winner" : "Player " + winner + " wins";
+            JOptionPane.showMessageDialog(frame, msg, "Match over", JOptionPane.INFORMATION_MESSAGE);
+            System.exit(0);
+        });
+    }
+}